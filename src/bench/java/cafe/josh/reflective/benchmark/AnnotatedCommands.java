@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.benchmark;
+
+import cafe.josh.reflective.CommandDefinition;
+import cafe.josh.reflective.annotation.CommandMethod;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Ordinary annotated commands, so benchmarks cover the path a real plugin's commands take. The
+ * processor generates a dispatcher for this class; Reflected has the same commands but none, so
+ * TreeCommandExecutor falls back to scanning and binding them by reflection.
+ *
+ * @author joshua
+ */
+public class AnnotatedCommands implements CommandDefinition {
+    private long calls;
+
+    @CommandMethod(path = "bench tp <x:int> <y:int> <z:int>")
+    public void teleport(CommandSender s, int x, int y, int z) {
+        calls += x + y + z;
+    }
+
+    @CommandMethod(path = "bench warp set", requiredArgs = 1)
+    public void setWarp(CommandSender s, String name) {
+        calls++;
+    }
+
+    @CommandMethod(path = "bench warp list")
+    public void listWarps(CommandSender s) {
+        calls++;
+    }
+
+    @CommandMethod(path = "bench give", requiredArgs = 2)
+    public void give(CommandSender s, String item, Integer amount, String[] rest) {
+        calls += amount;
+    }
+
+    @CommandMethod(path = "bench home <slot:Integer>")
+    public void homeSlot(CommandSender s, Integer slot) {
+        calls += slot;
+    }
+
+    @CommandMethod(path = "bench home <name:String>")
+    public void homeNamed(CommandSender s, String name) {
+        calls++;
+    }
+
+    @CommandMethod(path = "bench mute", requiredArgs = 1)
+    public void mute(CommandSender s, String target, Long minutes) {
+        calls++;
+    }
+
+    @CommandMethod(path = "bench ping")
+    public void ping() {
+        calls++;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * Dispatchers are looked up by exact class, so this gets AnnotatedCommands' commands by
+     * reflection.
+     */
+    public static class Reflected extends AnnotatedCommands {
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.benchmark;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import cafe.josh.reflective.CommandDefinition;
+import cafe.josh.reflective.CommandMetrics;
+import cafe.josh.reflective.TreeCommandExecutor;
+import cafe.josh.reflective.test.MockCommand;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+
+/**
+ * Replays a log of command lines against a TreeCommandExecutor, to reproduce a production mix of
+ * commands offline.
+ *
+ * Each line of the log is a sender type ("player" or "console"), the sender's permissions (comma
+ * separated, or "-" for none), and the command line as typed:
+ *
+ * <pre>
+ * player reflective.warp,reflective.home /warp set home
+ * console - /say hi
+ * </pre>
+ *
+ * Blank lines and lines starting with '#' are ignored. Commands are sent from mock senders, which
+ * discard any messages sent to them.
+ *
+ * Usage: CommandReplay [options] LOG
+ * <pre>
+ * --definition CLASS  a CommandDefinition (with a no-arg constructor) to register; repeatable
+ * --threads N         how many threads replay the log concurrently (default 1)
+ * --rate N            commands per second across all threads, or 0 for as fast as possible (default 0)
+ * --passes N          how many times to replay the whole log (default 1)
+ * --warmup N          passes to run, unmeasured, before the measured ones (default 1)
+ * </pre>
+ *
+ * With a rate, latency is measured from when each command was scheduled to start rather than from
+ * when it actually started, so a stall shows up in the latency of every command it delayed.
+ *
+ * @author joshua
+ */
+public class CommandReplay {
+    private static final long SPIN_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final TreeCommandExecutor executor;
+    private final List<Entry> entries;
+    private final int threads;
+    private final long rate;
+
+    public CommandReplay(TreeCommandExecutor executor, List<Entry> entries, int threads, long rate) {
+        if(entries.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to replay");
+        }
+
+        this.executor = executor;
+        this.entries = entries;
+        this.threads = threads;
+        this.rate = rate;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> definitions = new ArrayList<>();
+        int threads = 1, passes = 1, warmup = 1;
+        long rate = 0;
+        String log = null;
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "--definition":
+                    definitions.add(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--rate":
+                    rate = Long.parseLong(args[++i]);
+                    break;
+                case "--passes":
+                    passes = Integer.parseInt(args[++i]);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    log = args[i];
+            }
+        }
+
+        if(log == null || definitions.isEmpty()) {
+            System.err.println("Usage: CommandReplay --definition CLASS [--definition CLASS...] [--threads N] [--rate N] [--passes N] [--warmup N] LOG");
+            System.exit(1);
+        }
+
+        TreeCommandExecutor executor = new TreeCommandExecutor();
+        for(String name : definitions) {
+            executor.add((CommandDefinition) Class.forName(name).newInstance());
+        }
+
+        CommandReplay replay = new CommandReplay(executor, parse(Files.readAllLines(Paths.get(log), StandardCharsets.UTF_8)), threads, rate);
+        for(int i = 0; i < warmup; i++) {
+            replay.run(1);
+        }
+
+        executor.enableMetrics();
+        replay.run(passes).print(System.out);
+        printFailures(executor);
+    }
+
+    /**
+     *
+     * @param lines the lines of a replay log
+     * @return the commands to replay
+     *
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    public static List<Entry> parse(List<String> lines) {
+        Map<String, CommandSender> senders = new HashMap<>();
+        List<Entry> ret = new ArrayList<>(lines.size());
+        for(int n = 0; n < lines.size(); n++) {
+            String line = lines.get(n).trim();
+            if(line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] parts = line.split(" +", 3);
+            if(parts.length < 3 || !parts[2].startsWith("/") || parts[2].length() == 1) {
+                throw new IllegalArgumentException("Line " + (n + 1) + " should be \"<player|console> <perms|-> /<command>\": " + line);
+            }
+
+            //one sender per distinct type and permission set, shared by every line that uses it
+            CommandSender sender = senders.computeIfAbsent(parts[0] + " " + parts[1], k -> newSender(parts[0], parts[1]));
+            String[] tokens = parts[2].substring(1).split(" +");
+            ret.add(new Entry(sender, new MockCommand(tokens[0]), tokens[0], Arrays.copyOfRange(tokens, 1, tokens.length)));
+        }
+
+        return ret;
+    }
+
+    private static CommandSender newSender(String type, String perms) {
+        Class<?> senderType;
+        if(type.equals("player")) {
+            senderType = Player.class;
+        } else if(type.equals("console")) {
+            senderType = ConsoleCommandSender.class;
+        } else {
+            throw new IllegalArgumentException("Unknown sender type: " + type);
+        }
+
+        Set<String> granted = perms.equals("-") ? new HashSet<>() : new HashSet<>(Arrays.asList(perms.split(",")));
+        String name = type + "[" + perms + "]";
+        return (CommandSender) Proxy.newProxyInstance(CommandReplay.class.getClassLoader(), new Class<?>[]{senderType}, (proxy, m, a) -> {
+            switch(m.getName()) {
+                case "getName":
+                case "toString":
+                    return name;
+                case "hasPermission":
+                case "isPermissionSet":
+                    return a[0] instanceof String && granted.contains((String) a[0]);
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == a[0];
+                default:
+                    return defaultValue(m.getReturnType());
+            }
+        });
+    }
+
+    private static Object defaultValue(Class<?> c) {
+        if(c == boolean.class) {
+            return false;
+        } else if(c == char.class) {
+            return '\0';
+        } else if(c == byte.class) {
+            return (byte) 0;
+        } else if(c == short.class) {
+            return (short) 0;
+        } else if(c == int.class) {
+            return 0;
+        } else if(c == long.class) {
+            return 0L;
+        } else if(c == float.class) {
+            return 0f;
+        } else if(c == double.class) {
+            return 0d;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Replays the log passes times, split across this replay's threads.
+     *
+     * @param passes
+     * @return what was measured
+     * @throws InterruptedException
+     */
+    public Result run(int passes) throws InterruptedException {
+        long total = (long) entries.size() * passes;
+        long[][] latencies = new long[threads][];
+        long[] allocated = new long[threads];
+        AtomicLong next = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(threads);
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        boolean measureAllocation = mx instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) mx).isThreadAllocatedMemorySupported();
+
+        long start = System.nanoTime();
+        for(int t = 0; t < threads; t++) {
+            final int id = t;
+            Thread worker = new Thread(() -> {
+                long[] mine = new long[(int) (total / threads) + 1];
+                int count = 0;
+                long allocBefore = measureAllocation ? allocatedBytes(mx) : 0;
+
+                for(long i = next.getAndIncrement(); i < total; i = next.getAndIncrement()) {
+                    long scheduled = rate == 0 ? System.nanoTime() : start + i * TimeUnit.SECONDS.toNanos(1) / rate;
+                    waitUntil(scheduled);
+
+                    Entry e = entries.get((int) (i % entries.size()));
+                    executor.onCommand(e.sender, e.command, e.label, e.args);
+
+                    if(count == mine.length) {
+                        mine = Arrays.copyOf(mine, mine.length * 2);
+                    }
+                    mine[count++] = System.nanoTime() - scheduled;
+                }
+
+                allocated[id] = measureAllocation ? allocatedBytes(mx) - allocBefore : -1;
+                latencies[id] = Arrays.copyOf(mine, count);
+                done.countDown();
+            }, "Replay " + t);
+            worker.start();
+        }
+
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).toArray();
+        Arrays.sort(all);
+        long bytes = measureAllocation ? Arrays.stream(allocated).sum() : -1;
+        return new Result(all, elapsed, bytes);
+    }
+
+    private static long allocatedBytes(ThreadMXBean mx) {
+        return ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Sleeping overshoots by up to a millisecond or so, which would show up as latency, so the last
+     * stretch is spent yielding instead.
+     */
+    private static void waitUntil(long nanoTime) {
+        long wait = nanoTime - System.nanoTime();
+        if(wait > SPIN_NANOS) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait - SPIN_NANOS);
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        while(System.nanoTime() - nanoTime < 0) {
+            Thread.yield();
+        }
+    }
+
+    private static void printFailures(TreeCommandExecutor executor) {
+        System.out.println("failures:");
+        executor.getMetrics().forEach((path, m) -> {
+            if(m.getFailures() > 0) {
+                StringBuilder b = new StringBuilder("  /" + path + ":");
+                for(CommandMetrics.Failure f : CommandMetrics.Failure.values()) {
+                    if(m.getFailures(f) > 0) {
+                        b.append(' ').append(f).append('=').append(m.getFailures(f));
+                    }
+                }
+                System.out.println(b);
+            }
+        });
+    }
+
+    /**
+     * One command line from the log.
+     */
+    public static class Entry {
+        final CommandSender sender;
+        final MockCommand command;
+        final String label;
+        final String[] args;
+
+        Entry(CommandSender sender, MockCommand command, String label, String[] args) {
+            this.sender = sender;
+            this.command = command;
+            this.label = label;
+            this.args = args;
+        }
+    }
+
+    /**
+     * Throughput, latency and allocation for one run.
+     */
+    public static class Result {
+        private final long[] sortedLatencies;
+        private final long elapsedNanos, allocatedBytes;
+
+        Result(long[] sortedLatencies, long elapsedNanos, long allocatedBytes) {
+            this.sortedLatencies = sortedLatencies;
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public long getCommands() {
+            return sortedLatencies.length;
+        }
+
+        public double getThroughput() {
+            return sortedLatencies.length / (elapsedNanos / 1e9);
+        }
+
+        /**
+         *
+         * @param percentile between 0 and 100
+         * @return the latency in nanoseconds
+         */
+        public long getLatencyPercentile(double percentile) {
+            int i = (int) Math.ceil(sortedLatencies.length * percentile / 100) - 1;
+            return sortedLatencies[Math.max(0, Math.min(sortedLatencies.length - 1, i))];
+        }
+
+        /**
+         *
+         * @return bytes allocated per command by the replaying threads, or -1 if the JVM can't
+         * measure it
+         */
+        public double getAllocatedBytesPerCommand() {
+            return allocatedBytes < 0 ? -1 : (double) allocatedBytes / sortedLatencies.length;
+        }
+
+        public void print(PrintStream out) {
+            out.printf("%d commands in %.2fs: %.0f commands/s%n", getCommands(), elapsedNanos / 1e9, getThroughput());
+            out.printf("latency (us): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+                    getLatencyPercentile(50) / 1e3, getLatencyPercentile(90) / 1e3, getLatencyPercentile(99) / 1e3,
+                    getLatencyPercentile(99.9) / 1e3, getLatencyPercentile(100) / 1e3);
+            if(allocatedBytes >= 0) {
+                out.printf("allocation: %.0f bytes/command%n", getAllocatedBytesPerCommand());
+            }
+        }
+    }
+}
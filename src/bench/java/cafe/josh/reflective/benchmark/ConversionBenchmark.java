@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import cafe.josh.reflective.CommandLeaf;
+import cafe.josh.reflective.InsufficientPermissionException;
+import cafe.josh.reflective.TreeCommandExecutor;
+import cafe.josh.reflective.UnsupportedCommandSenderException;
+import cafe.josh.reflective.test.MockCommand;
+import cafe.josh.reflective.test.MockCommandSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of CommandLeaf::execute for a command taking three arguments of each boxed type, so
+ * the cost is dominated by converting them.
+ *
+ * @author joshua
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark {
+    @Param({"Integer", "Long", "Float", "Double", "Boolean", "Character", "Byte", "Short", "String"})
+    public String type;
+
+    private CommandLeaf leaf;
+    private MockCommandSender sender;
+    private MockCommand command;
+    private String[] args, malformedArgs;
+
+    @Setup
+    public void setUp() throws ClassNotFoundException {
+        Class<?> c = Class.forName("java.lang." + type);
+        String value = sampleValue(type);
+
+        TreeCommandExecutor executor = new TreeCommandExecutor();
+        executor.add(new SyntheticCommands(SyntheticCommands.wide("bench", 1), c, c, c));
+        leaf = executor.getLeaves().iterator().next();
+        //malformed arguments are reported to the sender, which shouldn't be what's measured
+        sender = new MockCommandSender() {
+            @Override
+            public void sendMessage(String message) {
+            }
+        };
+        command = new MockCommand("bench");
+        args = new String[]{value, value, value};
+        malformedArgs = new String[]{"1x", value, value};
+    }
+
+    @Benchmark
+    public boolean convert() throws InsufficientPermissionException, UnsupportedCommandSenderException {
+        return leaf.execute(sender, command, args);
+    }
+
+    /**
+     * The first argument is mistyped (though a String or Character takes it as is), as players' and
+     * bots' often are.
+     */
+    @Benchmark
+    public boolean convertMalformed() throws InsufficientPermissionException, UnsupportedCommandSenderException {
+        return leaf.execute(sender, command, malformedArgs);
+    }
+
+    private static String sampleValue(String type) {
+        switch(type) {
+            case "Float":
+            case "Double":
+                return "12.5";
+            case "Boolean":
+                return "true";
+            case "Character":
+                return "x";
+            case "String":
+                return "hello";
+            default:
+                return "42";
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import cafe.josh.reflective.TreeCommandExecutor;
+import cafe.josh.reflective.test.MockCommand;
+import cafe.josh.reflective.test.MockCommandSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of TreeCommandExecutor::onCommand, for the deepest command in a tree of the given
+ * depth and width, and of TreeCommandExecutor::dispatch for the same command as a raw line.
+ *
+ * @author joshua
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    @Param({"1", "4", "8"})
+    public int depth;
+
+    @Param({"2", "16", "256"})
+    public int width;
+
+    private TreeCommandExecutor executor;
+    private MockCommandSender sender;
+    private MockCommand command;
+    private String[] args;
+    private String line;
+
+    @Setup
+    public void setUp() {
+        executor = new TreeCommandExecutor();
+        executor.add(new SyntheticCommands(SyntheticCommands.comb("bench", depth, width)));
+        sender = new MockCommandSender();
+        command = new MockCommand("bench");
+        args = SyntheticCommands.deepestArgs(depth);
+        line = "/bench " + String.join(" ", args);
+    }
+
+    @Benchmark
+    public boolean dispatch() {
+        return executor.onCommand(sender, command, "bench", args);
+    }
+
+    @Benchmark
+    public boolean dispatchRawLine() {
+        return executor.dispatch(sender, line);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import cafe.josh.reflective.TreeCommandExecutor;
+import cafe.josh.reflective.test.MockCommand;
+import cafe.josh.reflective.test.MockCommandSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of TreeCommandExecutor::onCommand for real annotated commands, called through a
+ * generated dispatcher or through the invoker CommandLeaf binds when it finds them by reflection.
+ *
+ * @author joshua
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvokerBenchmark {
+    @Param({"generated", "reflected"})
+    public String binding;
+
+    private TreeCommandExecutor executor;
+    private MockCommandSender sender;
+    private MockCommand command;
+    private final String[] teleport = {"tp", "10", "64", "-10"};
+    private final String[] ping = {"ping"};
+
+    @Setup
+    public void setUp() {
+        executor = new TreeCommandExecutor();
+        executor.add(binding.equals("generated") ? new AnnotatedCommands() : new AnnotatedCommands.Reflected());
+        sender = new MockCommandSender();
+        command = new MockCommand("bench");
+    }
+
+    @Benchmark
+    public boolean teleport() {
+        return executor.onCommand(sender, command, "bench", teleport);
+    }
+
+    @Benchmark
+    public boolean ping() {
+        return executor.onCommand(sender, command, "bench", ping);
+    }
+}
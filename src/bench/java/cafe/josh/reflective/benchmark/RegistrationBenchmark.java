@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import cafe.josh.reflective.TreeCommandExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time for TreeCommandExecutor::add to register a definition: real annotated commands, found by
+ * reflection (scanning the class, looking up converters and binding invokers) or built by their
+ * generated dispatcher, and synthetic definitions with thousands of commands, either all siblings
+ * or spread over a deep tree.
+ *
+ * @author joshua
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistrationBenchmark {
+    @Benchmark
+    public TreeCommandExecutor registerReflected() {
+        TreeCommandExecutor e = new TreeCommandExecutor();
+        e.add(new AnnotatedCommands.Reflected());
+        return e;
+    }
+
+    @Benchmark
+    public TreeCommandExecutor registerGenerated() {
+        TreeCommandExecutor e = new TreeCommandExecutor();
+        e.add(new AnnotatedCommands());
+        return e;
+    }
+
+    @Benchmark
+    public TreeCommandExecutor registerWide(Synthetic s) {
+        TreeCommandExecutor e = new TreeCommandExecutor();
+        e.add(s.wide);
+        return e;
+    }
+
+    @Benchmark
+    public TreeCommandExecutor registerDeep(Synthetic s) {
+        TreeCommandExecutor e = new TreeCommandExecutor();
+        e.add(s.deep);
+        return e;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Synthetic {
+        @Param({"1000", "5000"})
+        public int methods;
+
+        private SyntheticCommands wide, deep;
+
+        @Setup
+        public void setUp() {
+            wide = new SyntheticCommands(SyntheticCommands.wide("bench", methods));
+            //depth * (width - 1) + 1 commands
+            deep = new SyntheticCommands(SyntheticCommands.comb("bench", methods / 10, 11));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.benchmark;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+import cafe.josh.reflective.CommandDispatcher;
+import cafe.josh.reflective.CommandLeaf;
+import cafe.josh.reflective.annotation.CommandMethod;
+
+/**
+ * Builds SyntheticCommands' leaves. Every leaf calls a no-op invoker, so benchmarks measure the
+ * framework rather than the commands.
+ *
+ * @author joshua
+ */
+public class SyntheticCommands$$Dispatcher implements CommandDispatcher<SyntheticCommands> {
+    @Override
+    public List<CommandLeaf> getLeaves(SyntheticCommands definition) {
+        Class<?>[] types = definition.getParamTypes();
+        String[] names = new String[types.length];
+        Annotation[][] annotations = new Annotation[types.length][0];
+        for(int i = 0; i < types.length; i++) {
+            names[i] = "arg" + i;
+        }
+
+        List<CommandLeaf> ret = new ArrayList<>(definition.getPaths().size());
+        for(String path : definition.getPaths()) {
+            ret.add(new CommandLeaf(commandMethod(path), "synthetic::" + path, types, names, annotations, definition, args -> {
+            }));
+        }
+
+        return ret;
+    }
+
+    private static CommandMethod commandMethod(String path) {
+        return new CommandMethod() {
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return CommandMethod.class;
+            }
+
+            @Override
+            public String path() {
+                return path;
+            }
+
+            @Override
+            public String[] permNodes() {
+                return new String[0];
+            }
+
+            @Override
+            public String helpMsg() {
+                return "";
+            }
+
+            @Override
+            public int requiredArgs() {
+                return 0;
+            }
+
+            @Override
+            public String[] filters() {
+                return new String[0];
+            }
+        };
+    }
+}
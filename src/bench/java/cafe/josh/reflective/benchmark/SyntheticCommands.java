@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import cafe.josh.reflective.CommandDefinition;
+
+/**
+ * A CommandDefinition made of generated paths instead of annotated methods, for building trees of
+ * any shape. Its leaves come from SyntheticCommands$$Dispatcher, the same way a generated
+ * dispatcher's would.
+ *
+ * @author joshua
+ */
+public class SyntheticCommands implements CommandDefinition {
+    private final List<String> paths;
+    private final Class<?>[] paramTypes;
+
+    /**
+     *
+     * @param paths the command paths to define
+     * @param paramTypes the parameter types every command takes
+     */
+    public SyntheticCommands(List<String> paths, Class<?>... paramTypes) {
+        this.paths = Collections.unmodifiableList(new ArrayList<>(paths));
+        this.paramTypes = paramTypes.clone();
+    }
+
+    /**
+     * Makes a comb-shaped tree: every node down to depth has width children ("c0" to "cN"), but
+     * only c0 has children of its own.
+     *
+     * @param root the first segment of every path
+     * @param depth how many segments follow root on the longest path
+     * @param width how many children each node has
+     * @return the paths
+     */
+    public static List<String> comb(String root, int depth, int width) {
+        List<String> ret = new ArrayList<>();
+        StringBuilder prefix = new StringBuilder(root);
+        for(int d = 0; d < depth; d++) {
+            for(int w = 1; w < width; w++) {
+                ret.add(prefix + " c" + w);
+            }
+            prefix.append(" c0");
+        }
+        ret.add(prefix.toString());
+
+        return ret;
+    }
+
+    /**
+     *
+     * @param root the first segment of every path
+     * @param count how many children root has
+     * @return the paths "root c0" to "root cN"
+     */
+    public static List<String> wide(String root, int count) {
+        List<String> ret = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            ret.add(root + " c" + i);
+        }
+
+        return ret;
+    }
+
+    /**
+     *
+     * @param depth
+     * @return the args that reach the deepest command in comb(root, depth, width)
+     */
+    public static String[] deepestArgs(int depth) {
+        String[] ret = new String[depth];
+        Arrays.fill(ret, "c0");
+        return ret;
+    }
+
+    List<String> getPaths() {
+        return paths;
+    }
+
+    Class<?>[] getParamTypes() {
+        return paramTypes.clone();
+    }
+}
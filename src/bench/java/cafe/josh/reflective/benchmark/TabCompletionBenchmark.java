@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import cafe.josh.reflective.TreeCommandExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of TreeCommandExecutor::getTabCompletions under a node with many children, with and
+ * without the completion cache.
+ *
+ * @author joshua
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TabCompletionBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int children;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private TreeCommandExecutor executor;
+    private String[] everything, narrow, nothing;
+
+    @Setup
+    public void setUp() {
+        executor = new TreeCommandExecutor();
+        executor.add(new SyntheticCommands(SyntheticCommands.wide("bench", children)));
+        if(cached) {
+            executor.enableCompletionCache(1024);
+        }
+
+        everything = new String[]{""};
+        narrow = new String[]{"c5"};
+        nothing = new String[]{"zz"};
+    }
+
+    @Benchmark
+    public List<String> completeEverything() {
+        return executor.getTabCompletions("bench", everything);
+    }
+
+    @Benchmark
+    public List<String> completeNarrowPrefix() {
+        return executor.getTabCompletions("bench", narrow);
+    }
+
+    @Benchmark
+    public List<String> completeNoMatches() {
+        return executor.getTabCompletions("bench", nothing);
+    }
+}
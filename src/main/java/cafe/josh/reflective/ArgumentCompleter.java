@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective;
+
+import java.util.List;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Suggests values for a command method's parameter during tab completion.
+ *
+ * Completers are registered with TreeCommandExecutor::registerCompleter under a name, and
+ * parameters ask for one by that name with @CompleteWith. Completion runs on whatever thread asks
+ * for it (usually the server thread), so completers whose candidates are expensive to look up
+ * should be wrapped in a CachedArgumentCompleter.
+ *
+ * @author joshua
+ * @see cafe.josh.reflective.annotation.CompleteWith
+ * @see CachedArgumentCompleter
+ */
+@FunctionalInterface
+public interface ArgumentCompleter {
+    /**
+     *
+     * @param sender the sender asking for completions, or null if unknown
+     * @param partial what the sender has typed of the argument so far
+     * @return possible values for the argument that start with partial
+     */
+    public List<String> complete(CommandSender sender, String partial);
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A Burkhard-Keller tree of strings under Levenshtein distance, for finding the strings closest to
+ * a misspelled one without computing its distance to every string.
+ *
+ * Each edge is labelled with the distance between its two ends. By the triangle inequality, a
+ * search for strings within k of a term only needs to follow edges whose label is within k of the
+ * term's distance to the current node.
+ *
+ * @author joshua
+ */
+final class BKTree {
+    private final Node root;
+    private final boolean ignoreCase;
+
+    /**
+     *
+     * @param terms the strings to index (duplicates are ignored)
+     * @param ignoreCase whether distances ignore differences in case
+     */
+    BKTree(List<String> terms, boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+
+        Node r = null;
+        for(String term : terms) {
+            if(r == null) {
+                r = new Node(term);
+            } else {
+                r.insert(term, ignoreCase);
+            }
+        }
+
+        this.root = r;
+    }
+
+    /**
+     *
+     * @param term
+     * @param maxDistance the furthest a result can be from term
+     * @param limit the most results to return
+     * @return up to limit terms within maxDistance of term, closest first (ties sorted
+     * alphabetically)
+     */
+    List<String> search(String term, int maxDistance, int limit) {
+        List<Match> matches = new ArrayList<>();
+        if(root != null) {
+            Deque<Node> toVisit = new ArrayDeque<>();
+            toVisit.push(root);
+            while(!toVisit.isEmpty()) {
+                Node n = toVisit.pop();
+                int d = distance(term, n.term, ignoreCase);
+                if(d <= maxDistance) {
+                    matches.add(new Match(n.term, d));
+                }
+
+                for(int i = 0; i < n.childCount; i++) {
+                    if(Math.abs(n.edges[i] - d) <= maxDistance) {
+                        toVisit.push(n.children[i]);
+                    }
+                }
+            }
+        }
+
+        matches.sort((a, b) -> a.distance != b.distance ? Integer.compare(a.distance, b.distance) : a.term.compareTo(b.term));
+
+        List<String> ret = new ArrayList<>(Math.min(limit, matches.size()));
+        for(int i = 0; i < matches.size() && i < limit; i++) {
+            ret.add(matches.get(i).term);
+        }
+
+        return ret;
+    }
+
+    /**
+     *
+     * @param a
+     * @param b
+     * @param ignoreCase
+     * @return the Levenshtein (edit) distance between a and b
+     */
+    static int distance(String a, String b, boolean ignoreCase) {
+        int[] prev = new int[b.length() + 1], cur = new int[b.length() + 1];
+        for(int j = 0; j <= b.length(); j++) {
+            prev[j] = j;
+        }
+
+        for(int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            for(int j = 1; j <= b.length(); j++) {
+                int substitution = prev[j - 1] + (sameChar(a.charAt(i - 1), b.charAt(j - 1), ignoreCase) ? 0 : 1);
+                cur[j] = Math.min(substitution, Math.min(prev[j], cur[j - 1]) + 1);
+            }
+
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+
+        return prev[b.length()];
+    }
+
+    /**
+     * Compares the same way String::equalsIgnoreCase does, when ignoreCase.
+     */
+    private static boolean sameChar(char a, char b, boolean ignoreCase) {
+        if(a == b) {
+            return true;
+        } else if(!ignoreCase) {
+            return false;
+        }
+
+        char ua = Character.toUpperCase(a), ub = Character.toUpperCase(b);
+        return ua == ub || Character.toLowerCase(ua) == Character.toLowerCase(ub);
+    }
+
+    private static final class Node {
+        final String term;
+        int[] edges;
+        Node[] children;
+        int childCount;
+
+        Node(String term) {
+            this.term = term;
+        }
+
+        void insert(String t, boolean ignoreCase) {
+            Node n = this;
+            while(true) {
+                int d = distance(t, n.term, ignoreCase);
+                if(d == 0) {
+                    return;
+                }
+
+                Node next = n.getChild(d);
+                if(next == null) {
+                    n.addChild(d, new Node(t));
+                    return;
+                }
+
+                n = next;
+            }
+        }
+
+        private Node getChild(int edge) {
+            for(int i = 0; i < childCount; i++) {
+                if(edges[i] == edge) {
+                    return children[i];
+                }
+            }
+
+            return null;
+        }
+
+        private void addChild(int edge, Node child) {
+            if(children == null) {
+                edges = new int[2];
+                children = new Node[2];
+            } else if(childCount == children.length) {
+                edges = Arrays.copyOf(edges, childCount * 2);
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+
+            edges[childCount] = edge;
+            children[childCount] = child;
+            childCount++;
+        }
+    }
+
+    private static final class Match {
+        final String term;
+        final int distance;
+
+        Match(String term, int distance) {
+            this.term = term;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bukkit.command.CommandSender;
+
+/**
+ * An ArgumentCompleter that serves completions from a cached, sorted snapshot of its candidates.
+ *
+ * The candidates are loaded from source on the given Executor, never on the thread asking for
+ * completions. Once the snapshot is older than its time-to-live, the next completion starts a
+ * refresh in the background and keeps answering from the old snapshot until the refresh finishes.
+ * Until the first load finishes there are no completions.
+ *
+ * Completions match case-insensitively. A typical Executor on a Bukkit server is
+ * {@code r -> Bukkit.getScheduler().runTaskAsynchronously(plugin, r)}.
+ *
+ * @author joshua
+ */
+public class CachedArgumentCompleter implements ArgumentCompleter {
+    private final Supplier<? extends Collection<String>> source;
+    private final long ttlNanos;
+    private final Executor refresher;
+    private final AtomicBoolean refreshing;
+
+    private volatile List<String> candidates;
+    private volatile long expiresAt;
+
+    /**
+     *
+     * @param source loads every candidate value; called on refresher
+     * @param ttl how long a loaded snapshot is used before it is refreshed
+     * @param unit the unit of ttl
+     * @param refresher where source is called
+     */
+    public CachedArgumentCompleter(Supplier<? extends Collection<String>> source, long ttl, TimeUnit unit, Executor refresher) {
+        this.source = source;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.refresher = refresher;
+        this.refreshing = new AtomicBoolean();
+        this.candidates = Collections.emptyList();
+        this.expiresAt = System.nanoTime();
+    }
+
+    @Override
+    public List<String> complete(CommandSender sender, String partial) {
+        if(System.nanoTime() - expiresAt >= 0) {
+            refresh();
+        }
+
+        return PrefixRange.startingWith(candidates, partial, true);
+    }
+
+    /**
+     * Starts loading a new snapshot in the background, unless a load is already running.
+     */
+    public void refresh() {
+        if(!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            refresher.execute(this::load);
+        } catch(RejectedExecutionException ex) {
+            refreshing.set(false);
+        }
+    }
+
+    private void load() {
+        try {
+            List<String> loaded = new ArrayList<>(source.get());
+            loaded.sort(String.CASE_INSENSITIVE_ORDER);
+            candidates = Collections.unmodifiableList(loaded);
+        } catch(RuntimeException ex) {
+            Logger.getLogger(CachedArgumentCompleter.class.getName()).log(Level.WARNING, "Error loading completions", ex);
+        } finally {
+            //on failure, wait out the ttl before trying again rather than retrying every keystroke
+            expiresAt = System.nanoTime() + ttlNanos;
+            refreshing.set(false);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective;
+
+import java.util.List;
+
+/**
+ * Builds the CommandLeafs for a CommandDefinition without scanning it reflectively.
+ *
+ * Implementations are generated by CommandMethodProcessor, one per CommandDefinition, and named
+ * after the definition's binary name plus CLASS_SUFFIX (e.g. com.example.Foo$$Dispatcher).
+ * TreeCommandExecutor::add uses the generated dispatcher when there is one, and falls back to
+ * reflection when there isn't.
+ *
+ * @author joshua
+ * @param <T> the CommandDefinition this dispatches to
+ * @see cafe.josh.reflective.processor.CommandMethodProcessor
+ */
+public interface CommandDispatcher<T extends CommandDefinition> {
+    public static final String CLASS_SUFFIX = "$$Dispatcher";
+
+    /**
+     *
+     * @param definition the instance the leaves will call
+     * @return a leaf for each of definition's CommandMethods
+     */
+    public List<CommandLeaf> getLeaves(T definition);
+}
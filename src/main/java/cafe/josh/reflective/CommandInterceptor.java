@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective;
+
+import org.bukkit.command.CommandSender;
+
+/**
+ * Runs code around a command's method, e.g. for auditing, cooldowns or tracing.
+ *
+ * Interceptors are called after the sender's permissions and type have been checked and its
+ * arguments converted, immediately around the call to the command method. The first interceptor
+ * added to a TreeCommandExecutor is the outermost.
+ *
+ * @author joshua
+ * @see TreeCommandExecutor#addInterceptor(CommandInterceptor)
+ */
+public interface CommandInterceptor {
+    /**
+     * Called once per leaf when the leaf (or this interceptor) is registered, not on every call.
+     *
+     * @param leaf
+     * @return true if this interceptor should run around leaf
+     */
+    public default boolean appliesTo(CommandLeaf leaf) {
+        return true;
+    }
+
+    /**
+     *
+     * @param sender
+     * @param leaf the command about to run
+     * @param args the arguments about to be passed to the command's method
+     * @return false to stop the command (and any inner interceptors) from running. It's up to the
+     * interceptor to tell the sender why.
+     */
+    public default boolean preExecute(CommandSender sender, CommandLeaf leaf, Object[] args) {
+        return true;
+    }
+
+    /**
+     * Called after the command's method returns normally.
+     *
+     * @param sender
+     * @param leaf the command that ran
+     * @param args the arguments passed to the command's method
+     */
+    public default void postExecute(CommandSender sender, CommandLeaf leaf, Object[] args) {
+    }
+
+    /**
+     * Called if the command's method (or an inner interceptor) throws. The exception is logged
+     * afterwards, as it would be without any interceptors.
+     *
+     * @param sender
+     * @param leaf the command that ran
+     * @param args the arguments passed to the command's method
+     * @param t what was thrown
+     */
+    public default void onError(CommandSender sender, CommandLeaf leaf, Object[] args, Throwable t) {
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective;
+
+/**
+ * Calls the method behind a CommandLeaf once its arguments have been converted.
+ *
+ * @author joshua
+ * @see CommandLeaf
+ */
+@FunctionalInterface
+public interface CommandInvoker {
+    /**
+     *
+     * @param args the method's arguments, in declaration order (sender first, if present)
+     *
+     * @throws Throwable whatever the command method itself threw
+     */
+    void invoke(Object[] args) throws Throwable;
+}
@@ -16,17 +16,28 @@
  */
 package cafe.josh.reflective;
 
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
-import java.lang.reflect.Type;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import cafe.josh.reflective.annotation.CommandMethod;
+import cafe.josh.reflective.annotation.CompleteWith;
+import cafe.josh.reflective.annotation.DefaultValue;
+import cafe.josh.reflective.convert.ArgumentConverter;
+import cafe.josh.reflective.convert.ConverterRegistry;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.ConsoleCommandSender;
@@ -41,9 +52,25 @@ import org.bukkit.entity.Player;
 public class CommandLeaf {
 
     private final String[] nodeStrings;
+    private final String[][] aliases;
+    private final Class<?>[] pathArgumentTypes;
+    private final int numPathArguments;
     private final CommandMethod info;
-    private final Method m;
     private final CommandDefinition caller;
+    private final CommandInvoker invoker;
+    private final String methodName;
+    private final Class<?>[] paramTypes;
+    private final String[] paramNames;
+
+    private final SenderBinding senderBinding;
+    private final ArgumentConverter<?>[] converters;
+    private final Class<?>[] convertedTypes;
+    private final Object[] defaults;
+    private final String[] completerNames;
+    private final boolean takesRestArgs;
+    private final CommandMetrics metrics;
+    private final String usage, missingArgsHelp;
+    private volatile Dispatch intercepted;
 
     /**
      * Creates a new CommandLeaf from meta-information.
@@ -56,14 +83,131 @@ public class CommandLeaf {
      * @param d - the CommandDefinition that m belongs to
      */
     public CommandLeaf(CommandMethod info, Method m, CommandDefinition d) {
-        this.nodeStrings = info.path().split(" ");
-        this.m = m;
+        this(info, m.getDeclaringClass().getName() + "::" + m.getName(), m.getParameterTypes(), getParameterNames(m), m.getParameterAnnotations(), d, bindInvoker(m, d));
+    }
+
+    /**
+     * Creates a new CommandLeaf that calls its method through invoker instead of reflection.
+     *
+     * This is what generated CommandDispatchers use.
+     *
+     * @param info - meta-information about the command
+     * @param methodName - the name of the method, for error messages
+     * @param paramTypes - the method's parameter types
+     * @param paramNames - the method's parameter names, for usage messages
+     * @param paramAnnotations - the annotations on each of the method's parameters
+     * @param d - the CommandDefinition that the method belongs to
+     * @param invoker - calls the method
+     */
+    public CommandLeaf(CommandMethod info, String methodName, Class<?>[] paramTypes, String[] paramNames, Annotation[][] paramAnnotations, CommandDefinition d, CommandInvoker invoker) {
+        this.aliases = Stream.of(info.path().split(" ")).map(s -> s.split("\\|", -1)).toArray(String[][]::new);
+        this.nodeStrings = Stream.of(aliases).map(a -> a.length == 0 ? "" : a[0]).toArray(String[]::new);
         this.caller = d;
         this.info = info;
+        this.invoker = invoker;
+        this.methodName = methodName;
+        this.metrics = new CommandMetrics();
+        this.paramTypes = paramTypes.clone();
+        this.paramNames = paramNames.clone();
 
         if(nodeStrings.length == 0) {
             throw new RuntimeException("Error: command's path is zero-length");
         }
+        for(String[] a : aliases) {
+            if(a.length == 0 || Stream.of(a).anyMatch(String::isEmpty)) {
+                throw new RuntimeException("Error: command path \"" + info.path() + "\" has an empty alias");
+            }
+        }
+
+        Class<?>[] t = this.paramTypes;
+        int first = 0, last = t.length;
+        this.senderBinding = t.length > 0 ? SenderBinding.forType(t[0]) : SenderBinding.NONE;
+        if(senderBinding != SenderBinding.NONE) {
+            first++;
+        }
+        this.takesRestArgs = last > first && t[last - 1] == String[].class;
+        if(takesRestArgs) {
+            last--;
+        }
+
+        this.converters = new ArgumentConverter<?>[last - first];
+        this.convertedTypes = Arrays.copyOfRange(t, first, last);
+        this.defaults = new Object[converters.length];
+        this.completerNames = new String[converters.length];
+        for(int i = 0; i < converters.length; i++) {
+            converters[i] = ConverterRegistry.getDefault().get(convertedTypes[i]);
+            if(converters[i] == null) {
+                throw newComplaintAboutParams(methodName);
+            }
+
+            for(Annotation a : paramAnnotations[first + i]) {
+                if(a instanceof CompleteWith) {
+                    completerNames[i] = ((CompleteWith) a).value();
+                } else if(a instanceof DefaultValue) {
+                    defaults[i] = convertDefault(converters[i], ((DefaultValue) a).value(), methodName, this.paramNames[first + i]);
+                }
+            }
+        }
+
+        //the path's arguments are bound to the first converted parameters, in order, and take
+        //their types from them
+        this.pathArgumentTypes = new Class<?>[nodeStrings.length];
+        int numArgs = 0;
+        for(int i = 0; i < nodeStrings.length; i++) {
+            Matcher m = ARGUMENT_SEGMENT.matcher(nodeStrings[i]);
+            if(!m.matches()) {
+                continue;
+            } else if(i == 0) {
+                throw new RuntimeException("Error: command path \"" + info.path() + "\" starts with an argument");
+            } else if(numArgs >= convertedTypes.length || !(isNamed(convertedTypes[numArgs], m.group(2)) || isNamed(box(convertedTypes[numArgs]), m.group(2)))) {
+                throw newComplaintAboutParams(methodName);
+            }
+
+            pathArgumentTypes[i] = box(convertedTypes[numArgs++]);
+        }
+        this.numPathArguments = numArgs;
+
+        //an optional primitive can't be left null, so it has to have a default
+        for(int i = numPathArguments + info.requiredArgs(); i < convertedTypes.length; i++) {
+            if(convertedTypes[i].isPrimitive() && defaults[i] == null) {
+                throw new UnsupportedParameterException("ERROR: Method " + methodName + "'s optional parameter " + this.paramNames[first + i] + " is a primitive, so it needs a @DefaultValue.");
+            }
+        }
+
+        this.usage = composeUsage();
+        this.missingArgsHelp = info.helpMsg().isEmpty() ? "Usage: " + usage : info.helpMsg();
+    }
+
+    /**
+     *
+     * @return the CommandDefinition this leaf's method belongs to
+     */
+    public CommandDefinition getDefinition() {
+        return caller;
+    }
+
+    /**
+     *
+     * @return this leaf's invocation metrics (only updated while its executor has metrics enabled)
+     */
+    public CommandMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     *
+     * @return the command's path and parameters, e.g. "/warp set &lt;name:String&gt;"
+     */
+    public String getUsage() {
+        return usage;
+    }
+
+    /**
+     *
+     * @return the help message given in this command's annotation, or "" if there isn't one
+     */
+    public String getHelpMessage() {
+        return info.helpMsg();
     }
 
     /**
@@ -85,10 +229,42 @@ public class CommandLeaf {
         return index < nodeStrings.length ? nodeStrings[index] : null;
     }
 
+    /**
+     *
+     * @param index the index of the path segment (0 is the first string)
+     *
+     * @return every string the user can type for that segment, canonical one
+     * first (e.g. "warp", "w" for a path of "warp|w set"), or an empty list if
+     * the path isn't that long
+     */
+    public List<String> getAliasesAt(int index) {
+        return index < aliases.length ? Collections.unmodifiableList(Arrays.asList(aliases[index])) : Collections.emptyList();
+    }
+
+    /**
+     *
+     * @param index the index of the path segment (0 is the first string)
+     *
+     * @return the type of the argument at that segment (e.g. Integer for
+     * "&lt;x:Integer&gt;" or "&lt;x:int&gt;"), or null if the segment is a
+     * literal or the path isn't that long
+     */
+    public Class<?> getArgumentTypeAt(int index) {
+        return index < pathArgumentTypes.length ? pathArgumentTypes[index] : null;
+    }
+
+    /**
+     *
+     * @return how many arguments are part of the command's path
+     */
+    public int getNumPathArguments() {
+        return numPathArguments;
+    }
+
     /**
      *
      * @return an unmodifiable list of all substrings in the command string
-     * (space-delimited)
+     * (space-delimited), using the canonical name of each aliased segment
      */
     public List<String> getStringNodes() {
         return Collections.unmodifiableList(Arrays.asList(nodeStrings));
@@ -103,101 +279,254 @@ public class CommandLeaf {
      * @param args required arguments and optional arguments, required arguments
      * first.
      *
+     * @return true if every argument was converted and the command ran, false if
+     * one couldn't be (the sender is told why, and the command isn't run) or an
+     * interceptor stopped it
+     *
      * @throws InsufficientPermissionException if the sender doesn't have
      * sufficient permission to run the command
      * @throws UnsupportedCommandSenderException if the sender is not able to
      * run the command (example: sender is console instead of Player)
      */
-    public void execute(CommandSender sender, Command cmd, String[] args) throws InsufficientPermissionException, UnsupportedCommandSenderException {
-        // if sender is a player, and they fail any filter or permission test, then throw exception
-        if(!sender.isOp() && !(Stream.of(info.filters()).map(name -> caller.getFilter(name)).allMatch(p -> p.test(sender))
-                && Stream.of(info.permNodes()).allMatch(perm -> !sender.hasPermission(perm)))) {
+    public boolean execute(CommandSender sender, Command cmd, String[] args) throws InsufficientPermissionException, UnsupportedCommandSenderException {
+        return execute(sender, cmd, NO_VALUES, args);
+    }
+
+    /**
+     * Like execute(sender, cmd, args), but with some arguments already converted, as the arguments
+     * in a command's path are while its tree is walked. Nothing is converted twice.
+     *
+     * @param sender the CommandSender executing the command
+     * @param cmd
+     * @param converted values for the first converted.length parameters after the sender
+     * @param args the arguments for the rest of the parameters, as typed
+     *
+     * @return true if every argument in args was converted and the command ran
+     *
+     * @throws InsufficientPermissionException
+     * @throws UnsupportedCommandSenderException
+     */
+    public boolean execute(CommandSender sender, Command cmd, Object[] converted, String[] args) throws InsufficientPermissionException, UnsupportedCommandSenderException {
+        return execute(sender, cmd, converted, new CommandLine(args), 0);
+    }
+
+    /**
+     * Like execute(sender, cmd, converted, args), but reading the arguments straight from a
+     * CommandLine: numbers are parsed from the line itself, and a token is only copied into a
+     * String if its parameter is a String (or the rest of the arguments are wanted).
+     *
+     * @param sender the CommandSender executing the command
+     * @param cmd the command, or null if it was dispatched from a raw line
+     * @param converted values for the first converted.length parameters after the sender
+     * @param args
+     * @param from the index in args of the first argument that isn't part of the command's path
+     *
+     * @return true if every argument in args was converted and the command ran
+     *
+     * @throws InsufficientPermissionException
+     * @throws UnsupportedCommandSenderException
+     */
+    public boolean execute(CommandSender sender, Command cmd, Object[] converted, CommandLine args, int from) throws InsufficientPermissionException, UnsupportedCommandSenderException {
+        return run(sender, cmd, converted, args, from) == null;
+    }
+
+    /**
+     * Like execute(sender, cmd, converted, args, from), but saying why the command didn't run.
+     *
+     * @return CONVERSION if an argument couldn't be converted, INTERCEPTED if an interceptor
+     * stopped the command, or null if it ran
+     *
+     * @throws InsufficientPermissionException
+     * @throws UnsupportedCommandSenderException
+     */
+    CommandMetrics.Failure run(CommandSender sender, Command cmd, Object[] converted, CommandLine args, int from) throws InsufficientPermissionException, UnsupportedCommandSenderException {
+        if(!isPermitted(sender)) {
             throw new InsufficientPermissionException();
         }
 
+        Object[] reflectiveArgs = new Object[paramTypes.length];
+
+        int paramPos = 0;
+        if(senderBinding != SenderBinding.NONE) {
+            if(!senderBinding.accepts(sender)) {
+                throw new UnsupportedCommandSenderException(sender);
+            }
+            reflectiveArgs[paramPos++] = sender;
+        }
+
+        System.arraycopy(converted, 0, reflectiveArgs, paramPos, converted.length);
+        paramPos += converted.length;
+
+        int first = converted.length, consumed = 0;
+        for(int argsPos = from; first + consumed < converters.length && args.has(argsPos); paramPos++, argsPos++, consumed++) {
+            ArgumentConverter<?> c = converters[first + consumed];
+            CharSequence s = args.source(argsPos);
+            int start = args.start(argsPos), end = args.end(argsPos);
+            Object value = c.tryConvert(s, start, end);
+            if(value == null) {
+                //the message is only built now, and nothing after the first bad argument is converted
+                sender.sendMessage("Error converting \"" + args.get(argsPos) + "\" to " + convertedTypes[first + consumed].getTypeName() + ": " + c.describeFailure(s, start, end));
+                return CommandMetrics.Failure.CONVERSION;
+            }
+            reflectiveArgs[paramPos] = value;
+        }
+
+        for(int i = first + consumed; i < converters.length; i++) {
+            reflectiveArgs[paramPos++] = defaults[i];
+        }
+
+        /**
+         * We'll be kind enough to not split hairs over a null array vs
+         * empty array. The String[] representing the rest of the args will
+         * *never* be null if it is present.
+         */
+        if(takesRestArgs) {
+            reflectiveArgs[reflectiveArgs.length - 1] = args.has(from + consumed) ? args.toArray(from + consumed) : NO_ARGS;
+        }
+
         try {
-            Type[] t = m.getParameterTypes();
-            Object[] reflectiveArgs = new Object[t.length];
-
-            int paramPos = 0;
-            if(paramPos < t.length && (t[0] == CommandSender.class || t[0] == Player.class || t[0] == ConsoleCommandSender.class)) {
-                paramPos = 1;
-                reflectiveArgs[0] = sender;
-
-                if(t[0] == ConsoleCommandSender.class && !(sender instanceof ConsoleCommandSender)) {
-                    throw new UnsupportedCommandSenderException(sender);
-                } else if(t[0] == Player.class && !(sender instanceof Player)) {
-                    throw new UnsupportedCommandSenderException(sender);
-                }
+            Dispatch d = intercepted;
+            if(d == null) {
+                invoker.invoke(reflectiveArgs);
+            } else if(!d.dispatch(sender, reflectiveArgs)) {
+                return CommandMetrics.Failure.INTERCEPTED;
             }
+        } catch(Throwable ex) {
+            Logger.getLogger(TreeCommandExecutor.class.getName()).log(Level.SEVERE, null, ex);
+        }
 
-            paramLoop:
-            for(int argsPos = 0; paramPos < t.length && argsPos < args.length; paramPos++, argsPos++) {
-                try {
-                    if(t[paramPos] == Integer.class) {
-                        reflectiveArgs[paramPos] = Integer.parseInt(args[argsPos]);
-                    } else if(t[paramPos] == Long.class) {
-                        reflectiveArgs[paramPos] = Long.parseLong(args[argsPos]);
-                    } else if(t[paramPos] == Float.class) {
-                        reflectiveArgs[paramPos] = Float.parseFloat(args[argsPos]);
-                    } else if(t[paramPos] == Double.class) {
-                        reflectiveArgs[paramPos] = Double.parseDouble(args[argsPos]);
-                    } else if(t[paramPos] == Boolean.class) {
-                        reflectiveArgs[paramPos] = strictParseBoolean(args[argsPos]);
-                    } else if(t[paramPos] == Character.class) {
-                        if(args[argsPos].length() == 1) {
-                            reflectiveArgs[paramPos] = args[argsPos].charAt(0);
-                        } else {
-                            throw new IllegalArgumentException(args[argsPos] + " must be a single character.");
-                        }
-                    } else if(t[paramPos] == Byte.class) {
-                        reflectiveArgs[paramPos] = Byte.parseByte(args[argsPos]);
-                    } else if(t[paramPos] == Short.class) {
-                        reflectiveArgs[paramPos] = Short.parseShort(args[argsPos]);
-                    } else if(t[paramPos] == String.class) {
-                        reflectiveArgs[paramPos] = args[argsPos];
-                    } else if(t[paramPos] == String[].class) {
-                        int remaining = args.length - argsPos;
-                        String[] leftover = new String[remaining];
-                        System.arraycopy(args, argsPos, leftover, 0, remaining);
-                        reflectiveArgs[paramPos] = leftover;
-                        if(paramPos != t.length - 1) {
-                            throw newComplaintAboutParams(m);
-                        }
-                    } else {
-                        throw newComplaintAboutParams(m);
-                    }
-                } catch(IllegalArgumentException ex) {
-                    sender.sendMessage("Error converting \"" + args[argsPos] + "\" to " + t[paramPos].getTypeName() + ": " + ex.getLocalizedMessage());
-                }
+        return null;
+    }
+
+    /**
+     *
+     * @param sender
+     * @return true if sender passes this command's permission and filter checks, and is the kind of
+     * sender the command takes
+     */
+    public boolean canBeRunBy(CommandSender sender) {
+        return isPermitted(sender) && (senderBinding == SenderBinding.NONE || senderBinding.accepts(sender));
+    }
+
+    private boolean isPermitted(CommandSender sender) {
+        // if sender is a player, and they fail any filter or permission test, then they aren't permitted
+        return sender.isOp() || (Stream.of(info.filters()).map(name -> caller.getFilter(name)).allMatch(p -> p.test(sender))
+                && Stream.of(info.permNodes()).allMatch(perm -> !sender.hasPermission(perm)));
+    }
+
+    /**
+     * Composes the interceptors that apply to this leaf into a single Dispatch, so running the
+     * command doesn't have to walk a list of them. With no applicable interceptors, the command's
+     * invoker is called directly.
+     *
+     * @param interceptors every interceptor registered, outermost first
+     */
+    void setInterceptors(List<CommandInterceptor> interceptors) {
+        Dispatch d = null;
+        for(int i = interceptors.size() - 1; i >= 0; i--) {
+            CommandInterceptor interceptor = interceptors.get(i);
+            if(interceptor.appliesTo(this)) {
+                d = intercept(interceptor, d == null ? (sender, args) -> {
+                    invoker.invoke(args);
+                    return true;
+                } : d);
+            }
+        }
+
+        intercepted = d;
+    }
+
+    private Dispatch intercept(CommandInterceptor interceptor, Dispatch next) {
+        return (sender, args) -> {
+            if(!interceptor.preExecute(sender, this, args)) {
+                return false;
             }
 
-            /**
-             * We'll be kind enough to not split hairs over a null array vs
-             * empty array. The String[] representing the rest of the args will
-             * *never* be null if it is present.
-             */
-            if(t.length > 0 && t[t.length - 1] == String[].class && reflectiveArgs[reflectiveArgs.length - 1] == null) {
-                reflectiveArgs[reflectiveArgs.length - 1] = new String[0];
+            boolean ran;
+            try {
+                ran = next.dispatch(sender, args);
+            } catch(Throwable t) {
+                interceptor.onError(sender, this, args, t);
+                throw t;
             }
 
-            m.invoke(caller, reflectiveArgs);
-        } catch(IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-            Logger.getLogger(TreeCommandExecutor.class.getName()).log(Level.SEVERE, null, ex);
+            if(ran) {
+                interceptor.postExecute(sender, this, args);
+            }
+
+            return ran;
+        };
+    }
+
+    /**
+     * Binds m to d once, so each execution is a direct call through a class LambdaMetafactory
+     * spun for m instead of a reflective Method.invoke(). If that can't be done, falls back to a
+     * MethodHandle, and if the method can't be unreflected (i.e. its class isn't public), to plain
+     * reflection.
+     *
+     * @param m the command method
+     * @param d the instance m will be called on, or null if m is static
+     * @return an invoker for m
+     */
+    private static CommandInvoker bindInvoker(Method m, CommandDefinition d) {
+        CommandInvoker direct = LambdaInvokers.bind(m, d);
+        if(direct != null) {
+            return direct;
+        }
+
+        try {
+            MethodHandle h = MethodHandles.publicLookup().unreflect(m);
+            if(!Modifier.isStatic(m.getModifiers())) {
+                h = h.bindTo(d);
+            }
+
+            final MethodHandle spread = h.asSpreader(Object[].class, m.getParameterCount())
+                    .asType(MethodType.methodType(void.class, Object[].class));
+            return args -> {
+                spread.invokeExact(args);
+            };
+        } catch(IllegalAccessException | RuntimeException ex) {
+            return args -> {
+                try {
+                    m.invoke(d, args);
+                } catch(InvocationTargetException ite) {
+                    throw ite.getCause();
+                }
+            };
         }
     }
 
+    /**
+     * Suggests values for one of this command's arguments.
+     *
+     * @param sender the sender asking, or null if unknown
+     * @param argIndex which argument is being completed (0 is the first one after the command path,
+     * so arguments in the path aren't counted)
+     * @param partial what the sender has typed of the argument so far
+     * @param completers looks up ArgumentCompleters by the name given in @CompleteWith
+     * @return possible values for the argument, or an empty list if there are no suggestions
+     */
+    public List<String> completeArgument(CommandSender sender, int argIndex, String partial, Function<String, ArgumentCompleter> completers) {
+        int i = numPathArguments + argIndex;
+        if(i >= convertedTypes.length) {
+            return Collections.emptyList();
+        }
+
+        ArgumentCompleter c = completerNames[i] == null ? null : completers.apply(completerNames[i]);
+        return c == null ? converters[i].complete(sender, partial) : c.complete(sender, partial);
+    }
+
     /**
      *
      * @return the message to be sent to the user if they correctly type the
      * command, but don't supply enough required arguments
      */
     public String getMissingRequiredArgsHelpMessage() {
-        return info.helpMsg().length() == 0 ? composeUsageMessage(m) : info.helpMsg();
+        return missingArgsHelp;
     }
 
-    private static UnsupportedParameterException newComplaintAboutParams(Method m) {
-        return new UnsupportedParameterException("ERROR: Method " + m.getName() + " of class " + m.getClass().getName() + " has unsupported parameters.");
+    private static UnsupportedParameterException newComplaintAboutParams(String methodName) {
+        return new UnsupportedParameterException("ERROR: Method " + methodName + " has unsupported parameters.");
     }
 
     public static class UnsupportedParameterException extends RuntimeException {
@@ -209,35 +538,124 @@ public class CommandLeaf {
     }
 
     /**
-     * Parses a string into a boolean, but only "true" parses to true and only
-     * "false" parses to false. All other inputs throw an exceptions.
-     *
-     * @param s
-     * @return the boolean value of s
-     * @throws IllegalArgumentException if the string is not "true" or "false"
+     * Only called once, from the constructor; the result is cached for the life of the leaf.
+     */
+    private String composeUsage() {
+        StringBuilder b = new StringBuilder("/").append(String.join(" ", nodeStrings));
+        int inPath = numPathArguments;
+        for(int i = 0; i < paramTypes.length; i++) {
+            if(i == 0 && senderBinding != SenderBinding.NONE) {
+                continue;
+            } else if(inPath > 0) {
+                //already in the path, under the name it was given there
+                inPath--;
+            } else {
+                b.append(" <").append(paramNames[i]).append(':').append(paramTypes[i].getSimpleName()).append('>');
+            }
+        }
+
+        return b.toString();
+    }
+
+    /**
+     * Converts a @DefaultValue once, so a bad one is caught when the command is registered rather
+     * than when it's run.
      */
-    private static Boolean strictParseBoolean(String s) {
-        if(s.equalsIgnoreCase("true")) {
-            return true;
-        } else if(s.equalsIgnoreCase("false")) {
-            return false;
-        } else {
-            throw new IllegalArgumentException(s + " must be \"true\" or \"false\"");
+    private static Object convertDefault(ArgumentConverter<?> converter, String value, String methodName, String paramName) {
+        Object ret = converter.tryConvert(value, 0, value.length());
+        if(ret == null) {
+            throw new UnsupportedParameterException("ERROR: Method " + methodName + "'s default value \"" + value + "\" for " + paramName + " can't be converted to its type: " + converter.describeFailure(value, 0, value.length()));
         }
+
+        return ret;
+    }
+
+    private static String[] getParameterNames(Method m) {
+        return Stream.of(m.getParameters()).map(Parameter::getName).toArray(String[]::new);
     }
 
-    private static String composeUsageMessage(Method m) {
-        String path = m.getAnnotation(CommandMethod.class).path();
-        List<Parameter> params = Arrays.asList(m.getParameters());
-        String args = params.stream()
-                .filter(p -> !isSenderType(p.getType()))
-                .map(p -> "<" + p.getName() + ":" + p.getType().getSimpleName() + ">")
-                .reduce("", (acc, s) -> acc + " " + s);
+    /**
+     *
+     * @return true if name is type's simple or fully qualified name
+     */
+    private static boolean isNamed(Class<?> type, String name) {
+        return type.getSimpleName().equals(name) || type.getName().equals(name);
+    }
 
-        return "Usage: /" + path + args;
+    /**
+     *
+     * @return type's wrapper if it's a primitive, else type
+     */
+    private static Class<?> box(Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
     }
 
-    private static boolean isSenderType(Class<?> c) {
-        return c == Player.class || c == CommandSender.class || c == ConsoleCommandSender.class;
+    private static final String[] NO_ARGS = new String[0];
+    private static final Object[] NO_VALUES = new Object[0];
+
+    /**
+     * A path segment like "&lt;name:Type&gt;" is an argument rather than a literal.
+     */
+    private static final Pattern ARGUMENT_SEGMENT = Pattern.compile("<([^<>:|]+):([^<>:|]+)>");
+
+    /**
+     * The order a node tries its arguments' types in when a token doesn't match a literal child: the
+     * narrowest first, so "5" goes to an Integer argument before a String one, and only a String
+     * argument accepts anything.
+     */
+    private static final List<Class<?>> ARGUMENT_PRECEDENCE = Collections.unmodifiableList(Arrays.asList(
+            Boolean.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class, Character.class, String.class));
+
+    /**
+     *
+     * @param type a type returned by getArgumentTypeAt()
+     * @return where type comes in the order a node tries its arguments (lower first). Types
+     * without a place of their own come after every standard type but String.
+     */
+    static int getArgumentPrecedence(Class<?> type) {
+        int i = ARGUMENT_PRECEDENCE.indexOf(type);
+        return i >= 0 ? 2 * i : 2 * ARGUMENT_PRECEDENCE.indexOf(String.class) - 1;
+    }
+
+    /**
+     * Runs a command (and whatever interceptors are composed into it) on converted arguments.
+     */
+    @FunctionalInterface
+    private interface Dispatch {
+        /**
+         *
+         * @return true if the command ran, false if an interceptor stopped it
+         */
+        boolean dispatch(CommandSender sender, Object[] args) throws Throwable;
+    }
+
+    /**
+     * How (and whether) the CommandSender is passed as the first parameter of a command method.
+     */
+    private enum SenderBinding {
+        NONE(null),
+        ANY(CommandSender.class),
+        PLAYER(Player.class),
+        CONSOLE(ConsoleCommandSender.class);
+
+        private final Class<?> type;
+
+        private SenderBinding(Class<?> type) {
+            this.type = type;
+        }
+
+        public boolean accepts(CommandSender sender) {
+            return type.isInstance(sender);
+        }
+
+        public static SenderBinding forType(Class<?> c) {
+            for(SenderBinding b : values()) {
+                if(b.type == c) {
+                    return b;
+                }
+            }
+
+            return NONE;
+        }
     }
 }
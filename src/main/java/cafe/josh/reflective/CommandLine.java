@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective;
+
+import java.util.Arrays;
+
+/**
+ * The arguments of a command, either as Bukkit split them or as a raw line to be split here.
+ *
+ * A raw line is tokenized lazily, one token further each time a later one is asked for, and a
+ * token is just a range of the line: nothing is copied until get() is called for it. Tokens are
+ * separated by whitespace; double quotes group words into one token ("my home"), and a backslash
+ * escapes the character after it, inside quotes or out.
+ *
+ * @author joshua
+ */
+public final class CommandLine {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final CharSequence line;
+    private final int length;
+    /**
+     * The start and end of each token scanned so far, in pairs. A token with quotes or escapes in
+     * it has its end stored complemented (~end), since it has to be unescaped before it's used.
+     */
+    private int[] bounds;
+    private String[] strings;
+    private int size, pos;
+
+    /**
+     * Tokenizes everything in line from start on.
+     *
+     * @param line
+     * @param start
+     */
+    public CommandLine(CharSequence line, int start) {
+        this.line = line;
+        this.length = line.length();
+        this.bounds = new int[INITIAL_CAPACITY * 2];
+        this.pos = start;
+    }
+
+    /**
+     * Wraps arguments that have already been split (e.g. by Bukkit). The array isn't copied, so it
+     * mustn't be modified afterwards.
+     *
+     * @param args
+     */
+    public CommandLine(String[] args) {
+        this.line = null;
+        this.length = 0;
+        this.strings = args;
+        this.size = args.length;
+    }
+
+    /**
+     *
+     * @return how many tokens there are (which means tokenizing the whole line)
+     */
+    public int size() {
+        while(scanNext()) {
+        }
+
+        return size;
+    }
+
+    /**
+     *
+     * @param i
+     * @return true if there are more than i tokens
+     */
+    boolean has(int i) {
+        while(size <= i && scanNext()) {
+        }
+
+        return i < size;
+    }
+
+    /**
+     *
+     * @param i
+     * @return the i'th token, unquoted and unescaped
+     * @throws IndexOutOfBoundsException if there aren't that many tokens
+     */
+    public String get(int i) {
+        if(!has(i)) {
+            throw new IndexOutOfBoundsException("No token " + i + ", there are only " + size);
+        }
+
+        if(strings == null) {
+            strings = new String[bounds.length / 2];
+        }
+        String s = strings[i];
+        if(s == null) {
+            int start = bounds[2 * i], end = bounds[2 * i + 1];
+            s = end >= 0 ? line.subSequence(start, end).toString() : unescape(start, ~end);
+            strings[i] = s;
+        }
+
+        return s;
+    }
+
+    /**
+     *
+     * @param from
+     * @return tokens from on, as Strings
+     */
+    public String[] toArray(int from) {
+        String[] ret = new String[Math.max(0, size() - from)];
+        for(int i = 0; i < ret.length; i++) {
+            ret[i] = get(from + i);
+        }
+
+        return ret;
+    }
+
+    /**
+     * source(i), start(i) and end(i) give the range a token can be read from without copying it:
+     * the line itself for a plain token, or its unescaped String otherwise.
+     *
+     * Only valid once has(i) has returned true.
+     */
+    CharSequence source(int i) {
+        return line != null && bounds[2 * i + 1] >= 0 ? line : get(i);
+    }
+
+    int start(int i) {
+        return line != null && bounds[2 * i + 1] >= 0 ? bounds[2 * i] : 0;
+    }
+
+    int end(int i) {
+        return line != null && bounds[2 * i + 1] >= 0 ? bounds[2 * i + 1] : get(i).length();
+    }
+
+    /**
+     * Scans the next token, if there is one.
+     *
+     * @return false if the whole line has been scanned
+     */
+    private boolean scanNext() {
+        if(line == null) {
+            return false;
+        }
+
+        int p = pos;
+        while(p < length && Character.isWhitespace(line.charAt(p))) {
+            p++;
+        }
+        if(p >= length) {
+            pos = length;
+            return false;
+        }
+
+        int start = p;
+        boolean plain = true, quoted = false;
+        for(; p < length; p++) {
+            char c = line.charAt(p);
+            if(c == '\\') {
+                plain = false;
+                p++;
+            } else if(c == '"') {
+                plain = false;
+                quoted = !quoted;
+            } else if(!quoted && Character.isWhitespace(c)) {
+                break;
+            }
+        }
+
+        int end = Math.min(p, length);
+        pos = end;
+        if(2 * size == bounds.length) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            if(strings != null) {
+                strings = Arrays.copyOf(strings, bounds.length / 2);
+            }
+        }
+        bounds[2 * size] = start;
+        bounds[2 * size + 1] = plain ? end : ~end;
+        size++;
+        return true;
+    }
+
+    private String unescape(int start, int end) {
+        StringBuilder b = new StringBuilder(end - start);
+        for(int p = start; p < end; p++) {
+            char c = line.charAt(p);
+            if(c == '\\' && p + 1 < end) {
+                b.append(line.charAt(++p));
+            } else if(c != '"') {
+                b.append(c);
+            }
+        }
+
+        return b.toString();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Invocation counts, failure counts and a latency histogram for one CommandLeaf.
+ *
+ * Everything is a LongAdder, so threads recording at the same time don't contend on a single
+ * counter. The histogram has a fixed number of power-of-two buckets, so it never grows no matter
+ * how many invocations it records. Counters are only updated while the owning
+ * TreeCommandExecutor has metrics enabled.
+ *
+ * @author joshua
+ * @see TreeCommandExecutor#enableMetrics()
+ */
+public class CommandMetrics {
+    /**
+     * Bucket i counts latencies in [2^i, 2^(i+1)) nanoseconds (bucket 0 also counts 0), which
+     * covers every non-negative long.
+     */
+    public static final int NUM_BUCKETS = 63;
+
+    /**
+     * Why a dispatch to a leaf didn't run its command.
+     */
+    public enum Failure {
+        /**
+         * The sender failed a permission or filter check.
+         */
+        PERMISSION,
+        /**
+         * The sender was the wrong kind (e.g. console running a player-only command).
+         */
+        SENDER_TYPE,
+        /**
+         * Fewer arguments than the command requires were given.
+         */
+        MISSING_ARGS,
+        /**
+         * An argument couldn't be converted to its parameter's type.
+         */
+        CONVERSION,
+        /**
+         * An interceptor's preExecute() stopped the command.
+         */
+        INTERCEPTED;
+    }
+
+    private final LongAdder invocations;
+    private final LongAdder[] failures;
+    private final LongAdder[] latencyBuckets;
+
+    CommandMetrics() {
+        invocations = new LongAdder();
+        failures = newAdders(Failure.values().length);
+        latencyBuckets = newAdders(NUM_BUCKETS);
+    }
+
+    /**
+     * Counts one dispatch to the leaf, whatever its outcome.
+     */
+    void recordInvocation() {
+        invocations.increment();
+    }
+
+    void recordFailure(Failure f) {
+        failures[f.ordinal()].increment();
+    }
+
+    /**
+     *
+     * @param nanos how long the command took to run
+     */
+    void recordLatency(long nanos) {
+        latencyBuckets[bucketFor(nanos)].increment();
+    }
+
+    /**
+     * Each counter is read separately, so a snapshot taken while commands are running may be a
+     * few invocations out of step with itself.
+     *
+     * @return the current values of every counter
+     */
+    public Snapshot snapshot() {
+        long[] f = new long[failures.length];
+        for(int i = 0; i < f.length; i++) {
+            f[i] = failures[i].sum();
+        }
+
+        long[] b = new long[latencyBuckets.length];
+        for(int i = 0; i < b.length; i++) {
+            b[i] = latencyBuckets[i].sum();
+        }
+
+        return new Snapshot(invocations.sum(), f, b);
+    }
+
+    static int bucketFor(long nanos) {
+        return nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    private static LongAdder[] newAdders(int n) {
+        LongAdder[] ret = new LongAdder[n];
+        for(int i = 0; i < n; i++) {
+            ret[i] = new LongAdder();
+        }
+
+        return ret;
+    }
+
+    /**
+     * An immutable copy of a CommandMetrics' counters.
+     */
+    public static class Snapshot {
+        private final long invocations;
+        private final long[] failures;
+        private final long[] latencyBuckets;
+
+        private Snapshot(long invocations, long[] failures, long[] latencyBuckets) {
+            this.invocations = invocations;
+            this.failures = failures;
+            this.latencyBuckets = latencyBuckets;
+        }
+
+        /**
+         *
+         * @return how many times the leaf was dispatched to, including failures
+         */
+        public long getInvocations() {
+            return invocations;
+        }
+
+        public long getFailures(Failure f) {
+            return failures[f.ordinal()];
+        }
+
+        /**
+         *
+         * @return the total number of failures, of every kind
+         */
+        public long getFailures() {
+            long sum = 0;
+            for(long f : failures) {
+                sum += f;
+            }
+
+            return sum;
+        }
+
+        /**
+         *
+         * @param bucket
+         * @return how many invocations took [2^bucket, 2^(bucket+1)) nanoseconds
+         */
+        public long getLatencyCount(int bucket) {
+            return latencyBuckets[bucket];
+        }
+
+        /**
+         *
+         * @return how many invocations have a recorded latency
+         */
+        public long getLatencyCount() {
+            long sum = 0;
+            for(long b : latencyBuckets) {
+                sum += b;
+            }
+
+            return sum;
+        }
+
+        /**
+         * Estimates a latency percentile from the histogram. The estimate is the upper bound of the
+         * bucket the percentile falls in, so it's never low, and never high by more than a factor
+         * of two.
+         *
+         * @param percentile between 0 and 100
+         * @return the estimated latency in nanoseconds, or 0 if no latencies have been recorded
+         */
+        public long getLatencyPercentile(double percentile) {
+            if(percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100");
+            }
+
+            long total = getLatencyCount();
+            if(total == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+            long seen = 0;
+            for(int i = 0; i < latencyBuckets.length; i++) {
+                seen += latencyBuckets[i];
+                if(seen >= rank) {
+                    return i == NUM_BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                }
+            }
+
+            return Long.MAX_VALUE;
+        }
+    }
+}
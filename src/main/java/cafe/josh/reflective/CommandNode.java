@@ -0,0 +1,513 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import cafe.josh.reflective.convert.ArgumentConverter;
+import cafe.josh.reflective.convert.ConverterRegistry;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+/**
+ * An immutable node in a TreeCommandExecutor's tree.
+ *
+ * Children are kept in two parallel arrays, sorted by label, and found by binary search. Nodes are
+ * never modified once built: adding a command copies only the nodes along its path and shares
+ * every other subtree with the previous version of the tree.
+ *
+ * Aliases are just several labels leading to the same child, so the tree is really a DAG: an
+ * aliased subtree is stored once no matter how many names it has.
+ *
+ * In a case-insensitive tree, labels are sorted by String.CASE_INSENSITIVE_ORDER and searched with
+ * it too, so a lookup never has to allocate a lower-cased copy of what the user typed.
+ *
+ * A node can also have argument children (for path segments like "&lt;x:Integer&gt;"), at most one
+ * per type. They're only tried if no label matches, narrowest type first; if a token converts to
+ * more than one of them, TreeCommandExecutor follows each and takes whichever matches the most.
+ *
+ * @author joshua
+ */
+final class CommandNode {
+    private static final String[] NO_LABELS = new String[0];
+    private static final CommandNode[] NO_CHILDREN = new CommandNode[0];
+    private static final Argument[] NO_ARGUMENTS = new Argument[0];
+
+    final String nodeString;
+    final CommandLeaf executable;
+    private final boolean ignoreCase;
+    private final String[] labels;
+    private final CommandNode[] children;
+    private final Argument[] arguments;
+    private final List<String> labelList;
+    //built lazily; volatile so another thread never sees one before it's filled in
+    private volatile BKTree labelIndex;
+    private volatile String[] completionHelp;
+
+    /**
+     *
+     * @param nodeString
+     * @param ignoreCase whether this node and every node below it match labels case-insensitively
+     */
+    CommandNode(String nodeString, boolean ignoreCase) {
+        this(nodeString, ignoreCase, null, NO_LABELS, NO_CHILDREN, NO_ARGUMENTS);
+    }
+
+    private CommandNode(String nodeString, boolean ignoreCase, CommandLeaf executable, String[] labels, CommandNode[] children, Argument[] arguments) {
+        this.nodeString = nodeString;
+        this.ignoreCase = ignoreCase;
+        this.executable = executable;
+        this.labels = labels;
+        this.children = children;
+        this.arguments = arguments;
+        this.labelList = labels.length == 0 ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(labels));
+    }
+
+    CommandNode getChild(String nodeString) {
+        return getChild(nodeString, 0, nodeString.length());
+    }
+
+    /**
+     * Looks up a label straight from a range of s, e.g. a token in a CommandLine, without copying it.
+     *
+     * @param s
+     * @param start
+     * @param end
+     * @return the child the label in that range leads to, or null
+     */
+    CommandNode getChild(CharSequence s, int start, int end) {
+        int lo = 0, hi = labels.length - 1;
+        while(lo <= hi) {
+            int mid = (lo + hi) >>> 1, c = compare(labels[mid], s, start, end);
+            if(c < 0) {
+                lo = mid + 1;
+            } else if(c > 0) {
+                hi = mid - 1;
+            } else {
+                return children[mid];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Compares label to a range of s as order() would compare it to the range as a String.
+     */
+    private int compare(String label, CharSequence s, int start, int end) {
+        int n = Math.min(label.length(), end - start);
+        for(int i = 0; i < n; i++) {
+            char a = label.charAt(i), b = s.charAt(start + i);
+            if(a != b && ignoreCase) {
+                //the same two steps String.CASE_INSENSITIVE_ORDER takes
+                a = Character.toUpperCase(a);
+                b = Character.toUpperCase(b);
+                if(a != b) {
+                    a = Character.toLowerCase(a);
+                    b = Character.toLowerCase(b);
+                }
+            }
+            if(a != b) {
+                return a - b;
+            }
+        }
+
+        return label.length() - (end - start);
+    }
+
+    /**
+     *
+     * @return the order labels are sorted in (null means natural order, as in Arrays.binarySearch)
+     */
+    private Comparator<String> order() {
+        return ignoreCase ? String.CASE_INSENSITIVE_ORDER : null;
+    }
+
+    boolean hasChildren() {
+        return children.length != 0 || arguments.length != 0;
+    }
+
+    /**
+     *
+     * @return how many labels this node has (argument children aren't counted)
+     */
+    int getChildCount() {
+        return children.length;
+    }
+
+    int getArgumentCount() {
+        return arguments.length;
+    }
+
+    /**
+     *
+     * @param i
+     * @return the i'th argument child, in the order they're tried
+     */
+    Argument getArgument(int i) {
+        return arguments[i];
+    }
+
+    /**
+     *
+     * @param i
+     * @return the child the i'th label leads to (aliased children appear once per alias)
+     */
+    CommandNode getChild(int i) {
+        return children[i];
+    }
+
+    String getLabel(int i) {
+        return labels[i];
+    }
+
+    /**
+     *
+     * @return an unmodifiable, sorted view of all child labels
+     */
+    List<String> getLabels() {
+        return labelList;
+    }
+
+    /**
+     *
+     * @param prefix
+     * @return an unmodifiable, sorted view of the child labels that start with prefix
+     */
+    List<String> getLabelsStartingWith(String prefix) {
+        return PrefixRange.startingWith(labelList, prefix, ignoreCase);
+    }
+
+    /**
+     * Finds the child labels closest to a misspelled one. The index behind this is only built the
+     * first time it's needed.
+     *
+     * @param misspelled
+     * @param maxDistance the most edits a label can be away from misspelled
+     * @param limit the most labels to return
+     * @return up to limit labels within maxDistance edits of misspelled, closest first
+     */
+    List<String> getClosestLabels(String misspelled, int maxDistance, int limit) {
+        BKTree index = labelIndex;
+        if(index == null) {
+            //racing threads may each build one, but they're identical and immutable once built
+            index = new BKTree(labelList, ignoreCase);
+            labelIndex = index;
+        }
+
+        return index.search(misspelled, maxDistance, limit);
+    }
+
+    /**
+     * Lists what can be typed after this node, for when a user stops short of a command. Rendered
+     * the first time it's needed; since nodes never change, it never needs invalidating.
+     *
+     * @return the lines of the listing (shared, so don't modify it)
+     */
+    String[] getCompletionHelp() {
+        String[] help = completionHelp;
+        if(help == null) {
+            //as with labelIndex, a race just renders identical copies; it's published once filled
+            help = new String[labels.length + arguments.length + 1];
+            help[0] = ChatColor.YELLOW + "Possible completions:";
+            for(int i = 0; i < labels.length; i++) {
+                help[i + 1] = ChatColor.AQUA + labels[i];
+            }
+            for(int i = 0; i < arguments.length; i++) {
+                help[labels.length + i + 1] = ChatColor.AQUA + arguments[i].child.nodeString;
+            }
+            completionHelp = help;
+        }
+
+        return help;
+    }
+
+    /**
+     * Returns a copy of this node with leaf bound at the end of its path, creating any missing nodes
+     * along the way. All of a segment's aliases lead to the same child node.
+     *
+     * @param leaf
+     * @param depth how much of leaf's path has already been walked
+     * @return the new version of this node
+     *
+     * @throws RuntimeException if a command is already bound at the end of the path, or if one of
+     * a segment's aliases already leads to a node with a different canonical name (so that commands
+     * sharing a node always agree on what it's called)
+     */
+    CommandNode with(CommandLeaf leaf, int depth) {
+        List<String> aliases = leaf.getAliasesAt(depth);
+        if(aliases.isEmpty()) {
+            if(executable != null) {
+                throw new RuntimeException("Error: leaf node already has command bound");
+            }
+
+            return new CommandNode(nodeString, ignoreCase, leaf, labels, children, arguments);
+        }
+
+        Class<?> type = leaf.getArgumentTypeAt(depth);
+        if(type != null) {
+            //arguments of the same type are the same node, whatever they're named
+            int i = argumentIndex(type);
+            CommandNode child = i >= 0 ? arguments[i].child : new CommandNode(aliases.get(0), ignoreCase);
+            return withArgument(type, child.with(leaf, depth + 1));
+        }
+
+        CommandNode child = null;
+        for(String alias : aliases) {
+            CommandNode c = getChild(alias);
+            if(c != null && !isSameLabel(c.nodeString, aliases.get(0))) {
+                throw new RuntimeException("Error: \"" + alias + "\" already leads to \"" + c.nodeString + "\", not \"" + aliases.get(0) + "\"");
+            } else if(c != null) {
+                child = c;
+            }
+        }
+
+        CommandNode newChild = (child == null ? new CommandNode(aliases.get(0), ignoreCase) : child).with(leaf, depth + 1);
+        return withChild(aliases, child, newChild);
+    }
+
+    /**
+     * Returns a copy of this node with leaf unbound from the end of its path. Nodes left with
+     * neither a command nor children are pruned, along with all of their aliases; a node that's kept
+     * loses the aliases that no command still below it declares.
+     *
+     * @param leaf
+     * @param depth how much of leaf's path has already been walked
+     * @return the new version of this node, or this node if leaf wasn't bound at its path
+     */
+    CommandNode without(CommandLeaf leaf, int depth) {
+        List<String> aliases = leaf.getAliasesAt(depth);
+        if(aliases.isEmpty()) {
+            return executable == leaf ? new CommandNode(nodeString, ignoreCase, null, labels, children, arguments) : this;
+        }
+
+        Class<?> type = leaf.getArgumentTypeAt(depth);
+        if(type != null) {
+            int i = argumentIndex(type);
+            if(i < 0) {
+                return this;
+            }
+
+            CommandNode newChild = arguments[i].child.without(leaf, depth + 1);
+            return newChild == arguments[i].child ? this : withArgument(type, newChild.isEmpty() ? null : newChild);
+        }
+
+        CommandNode child = getChild(aliases.get(0));
+        if(child == null) {
+            return this;
+        }
+
+        CommandNode newChild = child.without(leaf, depth + 1);
+        if(newChild == child) {
+            return this;
+        }
+
+        if(newChild.isEmpty()) {
+            return withoutChild(child, null);
+        }
+
+        List<String> orphaned = aliases.stream()
+                .filter(alias -> !newChild.isDeclaredBelow(alias, depth))
+                .collect(Collectors.toList());
+        return withChild(Collections.emptyList(), child, newChild).withoutChild(newChild, orphaned);
+    }
+
+    /**
+     *
+     * @param label
+     * @param depth the index of the path segment label is an alias for
+     * @return true if a command bound at or below this node declares label at that segment
+     */
+    private boolean isDeclaredBelow(String label, int depth) {
+        if(executable != null && executable.getAliasesAt(depth).stream().anyMatch(alias -> isSameLabel(alias, label))) {
+            return true;
+        }
+
+        for(CommandNode c : children) {
+            if(c.isDeclaredBelow(label, depth)) {
+                return true;
+            }
+        }
+        for(Argument a : arguments) {
+            if(a.child.isDeclaredBelow(label, depth)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isSameLabel(String a, String b) {
+        return ignoreCase ? a.equalsIgnoreCase(b) : a.equals(b);
+    }
+
+    /**
+     *
+     * @return true if this node neither runs a command nor leads to one
+     */
+    boolean isEmpty() {
+        return executable == null && children.length == 0 && arguments.length == 0;
+    }
+
+    private int argumentIndex(Class<?> type) {
+        for(int i = 0; i < arguments.length; i++) {
+            if(arguments[i].type == type) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     *
+     * @param type
+     * @param child the node arguments of type lead to, or null to remove the argument
+     * @return a copy of this node with its argument of type replaced, added (in precedence order)
+     * or removed
+     */
+    private CommandNode withArgument(Class<?> type, CommandNode child) {
+        int i = argumentIndex(type);
+        Argument[] newArguments;
+        if(i >= 0 && child != null) {
+            newArguments = arguments.clone();
+            newArguments[i] = new Argument(type, child);
+        } else if(i >= 0) {
+            newArguments = new Argument[arguments.length - 1];
+            System.arraycopy(arguments, 0, newArguments, 0, i);
+            System.arraycopy(arguments, i + 1, newArguments, i, newArguments.length - i);
+        } else {
+            int precedence = CommandLeaf.getArgumentPrecedence(type), insertAt = 0;
+            while(insertAt < arguments.length && CommandLeaf.getArgumentPrecedence(arguments[insertAt].type) < precedence) {
+                insertAt++;
+            }
+
+            newArguments = new Argument[arguments.length + 1];
+            System.arraycopy(arguments, 0, newArguments, 0, insertAt);
+            System.arraycopy(arguments, insertAt, newArguments, insertAt + 1, arguments.length - insertAt);
+            newArguments[insertAt] = new Argument(type, child);
+        }
+
+        return new CommandNode(nodeString, ignoreCase, executable, labels, children, newArguments.length == 0 ? NO_ARGUMENTS : newArguments);
+    }
+
+    /**
+     *
+     * @param labels the labels that should lead to child
+     * @param old the node child replaces (every label leading to it will lead to child), or null
+     * @param child
+     * @return a copy of this node with child added under labels
+     */
+    private CommandNode withChild(List<String> labels, CommandNode old, CommandNode child) {
+        String[] newLabels = Arrays.copyOf(this.labels, this.labels.length + labels.size());
+        CommandNode[] newChildren = Arrays.copyOf(children, children.length + labels.size());
+        int n = this.labels.length;
+
+        for(int i = 0; i < n; i++) {
+            if(newChildren[i] == old) {
+                newChildren[i] = child;
+            }
+        }
+
+        for(String label : labels) {
+            int i = Arrays.binarySearch(newLabels, 0, n, label, order());
+            if(i >= 0) {
+                newChildren[i] = child;
+                continue;
+            }
+
+            int insertAt = -(i + 1);
+            System.arraycopy(newLabels, insertAt, newLabels, insertAt + 1, n - insertAt);
+            System.arraycopy(newChildren, insertAt, newChildren, insertAt + 1, n - insertAt);
+            newLabels[insertAt] = label;
+            newChildren[insertAt] = child;
+            n++;
+        }
+
+        if(n < newLabels.length) {
+            newLabels = Arrays.copyOf(newLabels, n);
+            newChildren = Arrays.copyOf(newChildren, n);
+        }
+
+        return new CommandNode(nodeString, ignoreCase, executable, newLabels, newChildren, arguments);
+    }
+
+    /**
+     *
+     * @param child
+     * @param labels which of the labels leading to child to remove, or null for all of them
+     * @return a copy of this node without those labels
+     */
+    private CommandNode withoutChild(CommandNode child, List<String> labels) {
+        if(labels != null && labels.isEmpty()) {
+            return this;
+        }
+
+        int n = 0;
+        String[] newLabels = new String[this.labels.length];
+        CommandNode[] newChildren = new CommandNode[children.length];
+        for(int i = 0; i < children.length; i++) {
+            String label = this.labels[i];
+            if(children[i] != child || (labels != null && labels.stream().noneMatch(l -> isSameLabel(l, label)))) {
+                newLabels[n] = label;
+                newChildren[n] = children[i];
+                n++;
+            }
+        }
+
+        if(n == 0) {
+            return new CommandNode(nodeString, ignoreCase, executable, NO_LABELS, NO_CHILDREN, arguments);
+        }
+
+        return new CommandNode(nodeString, ignoreCase, executable, Arrays.copyOf(newLabels, n), Arrays.copyOf(newChildren, n), arguments);
+    }
+
+    /**
+     * An edge taken by any token that converts to type.
+     */
+    static final class Argument {
+        final Class<?> type;
+        final CommandNode child;
+        private final ArgumentConverter<?> converter;
+
+        private Argument(Class<?> type, CommandNode child) {
+            this.type = type;
+            this.child = child;
+            this.converter = ConverterRegistry.getDefault().get(type);
+        }
+
+        /**
+         *
+         * @param token
+         * @return token converted to this argument's type, or null if it can't be
+         */
+        Object convert(String token) {
+            return convert(token, 0, token.length());
+        }
+
+        Object convert(CharSequence s, int start, int end) {
+            return converter.tryConvert(s, start, end);
+        }
+
+        List<String> complete(CommandSender sender, String partial) {
+            return converter.complete(sender, partial);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A size-bounded, least-recently-used cache of tab completion results, keyed by the node being
+ * completed and the partial token the user typed.
+ *
+ * Cached lists are unmodifiable and shared between every caller that asks for the same completion.
+ * The owning TreeCommandExecutor clears the cache whenever its tree changes.
+ *
+ * @author joshua
+ * @see TreeCommandExecutor#enableCompletionCache(int)
+ */
+public class CompletionCache {
+    private final int maximumSize;
+    private final Map<Key, List<String>> entries;
+    private final LongAdder hits, misses;
+
+    CompletionCache(int maximumSize) {
+        if(maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+
+        this.maximumSize = maximumSize;
+        this.entries = new LinkedHashMap<Key, List<String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<String>> eldest) {
+                return size() > CompletionCache.this.maximumSize;
+            }
+        };
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     *
+     * @param node the node being completed
+     * @param prefix the partial token
+     * @param completer computes the completions if they aren't cached
+     * @return the cached completions
+     */
+    List<String> get(CommandNode node, String prefix, Supplier<List<String>> completer) {
+        Key k = new Key(node, prefix);
+        List<String> ret;
+        synchronized(entries) {
+            ret = entries.get(k);
+        }
+
+        if(ret != null) {
+            hits.increment();
+            return ret;
+        }
+
+        misses.increment();
+        ret = completer.get();
+        synchronized(entries) {
+            entries.put(k, ret);
+        }
+
+        return ret;
+    }
+
+    void clear() {
+        synchronized(entries) {
+            entries.clear();
+        }
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public int size() {
+        synchronized(entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     *
+     * @return hits / (hits + misses), or 0 if nothing has been looked up yet
+     */
+    public double getHitRate() {
+        long h = getHitCount(), total = h + getMissCount();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private static class Key {
+        private final CommandNode node;
+        private final String prefix;
+
+        public Key(CommandNode node, String prefix) {
+            this.node = node;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(node) + prefix.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            return node == other.node && prefix.equals(other.prefix);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Every command in one version of the tree, grouped by root and rendered as help lines.
+ *
+ * Each root's commands are sorted by their path below the root, so the commands under any prefix
+ * are one contiguous range. A page is cut from that range directly, skipping commands the sender
+ * can't run, without copying or filtering the whole list.
+ *
+ * @author joshua
+ */
+final class HelpIndex {
+    private final Map<String, Section> sections;
+
+    /**
+     *
+     * @param root the root of the tree
+     * @param leaves every leaf in the tree
+     * @param ignoreCase whether roots and filters are matched regardless of case
+     */
+    HelpIndex(CommandNode root, Collection<CommandLeaf> leaves, boolean ignoreCase) {
+        Map<String, List<CommandLeaf>> byRoot = ignoreCase ? new TreeMap<>(String.CASE_INSENSITIVE_ORDER) : new HashMap<>();
+        for(CommandLeaf leaf : leaves) {
+            //grouped by the root node's name, which is the same for all of a root's aliases
+            byRoot.computeIfAbsent(root.getChild(leaf.getStringAt(0)).nodeString, k -> new ArrayList<>()).add(leaf);
+        }
+
+        Map<String, Section> s = ignoreCase ? new TreeMap<>(String.CASE_INSENSITIVE_ORDER) : new HashMap<>();
+        byRoot.forEach((name, rootLeaves) -> s.put(name, new Section(rootLeaves, ignoreCase)));
+        this.sections = s;
+    }
+
+    /**
+     *
+     * @param root the name of a root command's node
+     * @return its commands, or null if it has none
+     */
+    Section get(String root) {
+        return sections.get(root);
+    }
+
+    static final class Section {
+        private final boolean ignoreCase;
+        private final CommandLeaf[] leaves;
+        private final String[] lines;
+        private final List<String> subpaths;
+
+        private Section(List<CommandLeaf> unsorted, boolean ignoreCase) {
+            Comparator<String> order = ignoreCase ? String.CASE_INSENSITIVE_ORDER : Comparator.naturalOrder();
+            CommandLeaf[] sorted = unsorted.toArray(new CommandLeaf[unsorted.size()]);
+            String[] paths = new String[sorted.length];
+            Arrays.sort(sorted, (a, b) -> order.compare(subpathOf(a), subpathOf(b)));
+
+            this.ignoreCase = ignoreCase;
+            this.leaves = sorted;
+            this.lines = new String[sorted.length];
+            for(int i = 0; i < sorted.length; i++) {
+                paths[i] = subpathOf(sorted[i]);
+                String help = sorted[i].getHelpMessage();
+                lines[i] = ChatColor.AQUA + sorted[i].getUsage() + (help.isEmpty() ? "" : ChatColor.GRAY + " - " + help);
+            }
+            this.subpaths = Collections.unmodifiableList(Arrays.asList(paths));
+        }
+
+        /**
+         *
+         * @param sender who's asking (only commands they can run are listed)
+         * @param filter only commands whose path below the root starts with this are listed
+         * @param page which page, starting from 1 (clamped to the first and last pages)
+         * @param pageSize how many commands per page
+         * @return the page
+         */
+        Page page(CommandSender sender, String filter, int page, int pageSize) {
+            int from = PrefixRange.start(subpaths, filter, ignoreCase), to = PrefixRange.end(subpaths, filter, ignoreCase);
+
+            page = Math.max(1, page);
+            int skip = (page - 1) * pageSize, visible = 0, n = 0;
+            String[] ret = new String[pageSize];
+            for(int i = from; i < to; i++) {
+                if(leaves[i].canBeRunBy(sender)) {
+                    if(visible >= skip && n < pageSize) {
+                        ret[n++] = lines[i];
+                    }
+                    visible++;
+                }
+            }
+
+            int pages = Math.max(1, (visible + pageSize - 1) / pageSize);
+            if(page > pages) {
+                return page(sender, filter, pages, pageSize);
+            }
+
+            return new Page(n == pageSize ? ret : Arrays.copyOf(ret, n), page, pages);
+        }
+
+        private static String subpathOf(CommandLeaf leaf) {
+            List<String> path = leaf.getStringNodes();
+            return String.join(" ", path.subList(1, path.size()));
+        }
+    }
+
+    static final class Page {
+        final String[] lines;
+        final int page, pageCount;
+
+        Page(String[] lines, int page, int pageCount) {
+            this.lines = lines;
+            this.page = page;
+            this.pageCount = pageCount;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.stream.Stream;
+
+/**
+ * Binds command methods with LambdaMetafactory, the way javac compiles a method reference. Each
+ * method gets its own class that calls it directly, so the JIT can inline the call, unlike a
+ * MethodHandle held in a field.
+ *
+ * LambdaMetafactory can't spread an array, so there's one functional interface per arity, and the
+ * CommandInvoker unpacks the array into it.
+ *
+ * @author joshua
+ */
+final class LambdaInvokers {
+    private static final Class<?>[] SHAPES = {
+        Arity0.class, Arity1.class, Arity2.class, Arity3.class, Arity4.class,
+        Arity5.class, Arity6.class, Arity7.class, Arity8.class};
+
+    private LambdaInvokers() {
+    }
+
+    /**
+     *
+     * @param m the command method
+     * @param d the instance m will be called on, or null if m is static
+     * @return an invoker for m, or null if m has more parameters than there are shapes for, or this
+     * class's loader can't see m's class or parameter types (the generated class couldn't link)
+     */
+    static CommandInvoker bind(Method m, Object d) {
+        int n = m.getParameterCount();
+        if(n >= SHAPES.length || !isVisible(m.getDeclaringClass()) || !Stream.of(m.getParameterTypes()).allMatch(LambdaInvokers::isVisible)) {
+            return null;
+        }
+
+        boolean isStatic = Modifier.isStatic(m.getModifiers());
+        Object f;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle impl = lookup.unreflect(m);
+            //the interface takes Objects; the generated class casts (and unboxes) them to m's types
+            MethodType erased = MethodType.genericMethodType(n).changeReturnType(void.class);
+            MethodType instantiated = MethodType.methodType(void.class, m.getParameterTypes()).wrap().changeReturnType(void.class);
+            MethodType factory = isStatic ? MethodType.methodType(SHAPES[n]) : MethodType.methodType(SHAPES[n], m.getDeclaringClass());
+            CallSite site = LambdaMetafactory.metafactory(lookup, "invoke", factory, erased, impl, instantiated);
+            f = isStatic ? site.getTarget().invoke() : site.getTarget().invoke(d);
+        } catch(Throwable t) {
+            return null;
+        }
+
+        switch(n) {
+            case 0:
+                Arity0 f0 = (Arity0) f;
+                return args -> f0.invoke();
+            case 1:
+                Arity1 f1 = (Arity1) f;
+                return args -> f1.invoke(args[0]);
+            case 2:
+                Arity2 f2 = (Arity2) f;
+                return args -> f2.invoke(args[0], args[1]);
+            case 3:
+                Arity3 f3 = (Arity3) f;
+                return args -> f3.invoke(args[0], args[1], args[2]);
+            case 4:
+                Arity4 f4 = (Arity4) f;
+                return args -> f4.invoke(args[0], args[1], args[2], args[3]);
+            case 5:
+                Arity5 f5 = (Arity5) f;
+                return args -> f5.invoke(args[0], args[1], args[2], args[3], args[4]);
+            case 6:
+                Arity6 f6 = (Arity6) f;
+                return args -> f6.invoke(args[0], args[1], args[2], args[3], args[4], args[5]);
+            case 7:
+                Arity7 f7 = (Arity7) f;
+                return args -> f7.invoke(args[0], args[1], args[2], args[3], args[4], args[5], args[6]);
+            default:
+                Arity8 f8 = (Arity8) f;
+                return args -> f8.invoke(args[0], args[1], args[2], args[3], args[4], args[5], args[6], args[7]);
+        }
+    }
+
+    private static boolean isVisible(Class<?> type) {
+        while(type.isArray()) {
+            type = type.getComponentType();
+        }
+        if(type.isPrimitive()) {
+            return true;
+        }
+
+        try {
+            return Class.forName(type.getName(), false, LambdaInvokers.class.getClassLoader()) == type;
+        } catch(ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    @FunctionalInterface
+    interface Arity0 {
+        void invoke() throws Throwable;
+    }
+
+    @FunctionalInterface
+    interface Arity1 {
+        void invoke(Object a0) throws Throwable;
+    }
+
+    @FunctionalInterface
+    interface Arity2 {
+        void invoke(Object a0, Object a1) throws Throwable;
+    }
+
+    @FunctionalInterface
+    interface Arity3 {
+        void invoke(Object a0, Object a1, Object a2) throws Throwable;
+    }
+
+    @FunctionalInterface
+    interface Arity4 {
+        void invoke(Object a0, Object a1, Object a2, Object a3) throws Throwable;
+    }
+
+    @FunctionalInterface
+    interface Arity5 {
+        void invoke(Object a0, Object a1, Object a2, Object a3, Object a4) throws Throwable;
+    }
+
+    @FunctionalInterface
+    interface Arity6 {
+        void invoke(Object a0, Object a1, Object a2, Object a3, Object a4, Object a5) throws Throwable;
+    }
+
+    @FunctionalInterface
+    interface Arity7 {
+        void invoke(Object a0, Object a1, Object a2, Object a3, Object a4, Object a5, Object a6) throws Throwable;
+    }
+
+    @FunctionalInterface
+    interface Arity8 {
+        void invoke(Object a0, Object a1, Object a2, Object a3, Object a4, Object a5, Object a6, Object a7) throws Throwable;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the strings that start with a prefix in a sorted list.
+ *
+ * Every string starting with a prefix sorts into one contiguous range, so the range can be found
+ * with two binary searches and returned as a subList view instead of a filtered copy.
+ *
+ * @author joshua
+ */
+final class PrefixRange {
+    private PrefixRange() {
+    }
+
+    /**
+     *
+     * @param sorted a random-access list sorted by natural order (or by
+     * String.CASE_INSENSITIVE_ORDER, if ignoreCase)
+     * @param prefix
+     * @param ignoreCase
+     * @return a view of the strings in sorted that start with prefix
+     */
+    static List<String> startingWith(List<String> sorted, String prefix, boolean ignoreCase) {
+        return sorted.subList(start(sorted, prefix, ignoreCase), end(sorted, prefix, ignoreCase));
+    }
+
+    /**
+     *
+     * @return the index of the first string in sorted that starts with prefix (or where it would be)
+     */
+    static int start(List<String> sorted, String prefix, boolean ignoreCase) {
+        return lowerBound(sorted, prefix, order(ignoreCase), ignoreCase, false);
+    }
+
+    /**
+     *
+     * @return one past the index of the last string in sorted that starts with prefix
+     */
+    static int end(List<String> sorted, String prefix, boolean ignoreCase) {
+        return lowerBound(sorted, prefix, order(ignoreCase), ignoreCase, true);
+    }
+
+    private static Comparator<String> order(boolean ignoreCase) {
+        return ignoreCase ? String.CASE_INSENSITIVE_ORDER : Comparator.naturalOrder();
+    }
+
+    static boolean startsWith(String s, String prefix, boolean ignoreCase) {
+        return s.regionMatches(ignoreCase, 0, prefix, 0, prefix.length());
+    }
+
+    /**
+     *
+     * @param pastPrefix if true, strings that start with prefix are treated as less than it
+     * @return the index of the first string in sorted that is not less than prefix
+     */
+    private static int lowerBound(List<String> sorted, String prefix, Comparator<String> order, boolean ignoreCase, boolean pastPrefix) {
+        int lo = 0, hi = sorted.size();
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            String s = sorted.get(mid);
+            if(order.compare(s, prefix) < 0 || (pastPrefix && startsWith(s, prefix, ignoreCase))) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        return lo;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches for commands that take longer than a budget (e.g. a slice of a 50ms server tick) to run.
+ *
+ * When a command starts, a background thread is scheduled to check on it once its budget is up,
+ * and that's cancelled if it finishes in time, so the thread only wakes for slow commands. If the
+ * command is still running, the thread samples its stack, showing where the time is going. When
+ * the command finishes, it's recorded as a SlowCommand and a warning is logged, at most once per
+ * warning interval (warnings in between are counted, not logged).
+ *
+ * @author joshua
+ * @see TreeCommandExecutor#setWatchdog(TickBudgetWatchdog)
+ */
+public class TickBudgetWatchdog implements AutoCloseable {
+    private static final int DEFAULT_MAX_RECORDED = 32;
+
+    private final long budgetNanos, warningIntervalNanos;
+    private final int maxRecorded;
+    private final Deque<SlowCommand> recorded;
+    private final AtomicLong nextWarning, suppressedWarnings;
+    private final ScheduledThreadPoolExecutor sampler;
+
+    /**
+     * Creates a watchdog that warns at most once a minute and remembers the last 32 slow commands.
+     *
+     * @param budget
+     * @param unit
+     */
+    public TickBudgetWatchdog(long budget, TimeUnit unit) {
+        this(budget, unit, 1, TimeUnit.MINUTES, DEFAULT_MAX_RECORDED);
+    }
+
+    /**
+     *
+     * @param budget how long a command may run before it's considered slow
+     * @param budgetUnit
+     * @param warningInterval the least time between two logged warnings
+     * @param warningUnit
+     * @param maxRecorded how many of the most recent slow commands to remember
+     */
+    public TickBudgetWatchdog(long budget, TimeUnit budgetUnit, long warningInterval, TimeUnit warningUnit, int maxRecorded) {
+        if(budget <= 0 || maxRecorded <= 0) {
+            throw new IllegalArgumentException("budget and maxRecorded must be positive");
+        }
+
+        this.budgetNanos = budgetUnit.toNanos(budget);
+        this.warningIntervalNanos = warningUnit.toNanos(warningInterval);
+        this.maxRecorded = maxRecorded;
+        this.recorded = new ArrayDeque<>(maxRecorded);
+        this.nextWarning = new AtomicLong(System.nanoTime());
+        this.suppressedWarnings = new AtomicLong();
+
+        this.sampler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "Reflective command watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        //most checks are cancelled, and shouldn't sit in the queue until they would have run
+        sampler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     *
+     * @param leaf the command about to run
+     * @param line everything typed after the command's name, path included; only read if the
+     * command turns out to be slow
+     * @param from the index in line of the first argument after the path
+     * @return a handle to pass to end() once the command finishes
+     */
+    Call begin(CommandLeaf leaf, CommandLine line, int from) {
+        Call c = new Call(Thread.currentThread(), leaf, line, from, System.nanoTime());
+        try {
+            c.check = sampler.schedule(() -> sample(c), budgetNanos, TimeUnit.NANOSECONDS);
+        } catch(RejectedExecutionException ex) {
+            //closed, so it's timed but not sampled
+        }
+        return c;
+    }
+
+    void end(Call c) {
+        long elapsed = System.nanoTime() - c.start;
+        if(c.check != null) {
+            c.check.cancel(false);
+        }
+        if(elapsed <= budgetNanos) {
+            return;
+        }
+
+        //literals are reported by their canonical names, path arguments and the rest as typed
+        int pathLength = c.leaf.getStringNodes().size();
+        StringBuilder path = new StringBuilder(c.leaf.getStringAt(0));
+        for(int i = 1; i < pathLength; i++) {
+            path.append(' ').append(c.leaf.getArgumentTypeAt(i) == null ? c.leaf.getStringAt(i) : c.line.get(i - 1));
+        }
+
+        SlowCommand slow = new SlowCommand(path.toString(), c.line.toArray(c.from), elapsed, c.stack);
+        synchronized(recorded) {
+            if(recorded.size() == maxRecorded) {
+                recorded.removeFirst();
+            }
+            recorded.addLast(slow);
+        }
+
+        warn(slow);
+    }
+
+    private void sample(Call c) {
+        c.stack = c.thread.getStackTrace();
+    }
+
+    private void warn(SlowCommand slow) {
+        long now = System.nanoTime(), next = nextWarning.get();
+        if(now - next < 0 || !nextWarning.compareAndSet(next, now + warningIntervalNanos)) {
+            suppressedWarnings.incrementAndGet();
+            return;
+        }
+
+        long suppressed = suppressedWarnings.getAndSet(0);
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("Command \"/%s\" took %.1fms (budget %.1fms)", slow.getPath(), slow.getElapsedNanos() / 1e6, budgetNanos / 1e6));
+        if(!slow.getArgs().isEmpty()) {
+            b.append(" with args ").append(slow.getArgs());
+        }
+        if(suppressed > 0) {
+            b.append("; ").append(suppressed).append(" more slow commands since the last warning");
+        }
+        for(StackTraceElement e : slow.getStackTrace()) {
+            b.append("\n\tat ").append(e);
+        }
+
+        Logger.getLogger(TickBudgetWatchdog.class.getName()).log(Level.WARNING, b.toString());
+    }
+
+    /**
+     *
+     * @return the most recent slow commands, oldest first
+     */
+    public List<SlowCommand> getSlowCommands() {
+        synchronized(recorded) {
+            return Collections.unmodifiableList(new ArrayList<>(recorded));
+        }
+    }
+
+    public long getBudget(TimeUnit unit) {
+        return unit.convert(budgetNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops the sampling thread. Commands that run afterwards are still timed, but their stacks
+     * aren't sampled.
+     */
+    @Override
+    public void close() {
+        sampler.shutdownNow();
+    }
+
+    static final class Call {
+        final Thread thread;
+        final CommandLeaf leaf;
+        final CommandLine line;
+        final int from;
+        final long start;
+        volatile StackTraceElement[] stack;
+        ScheduledFuture<?> check;
+
+        Call(Thread thread, CommandLeaf leaf, CommandLine line, int from, long start) {
+            this.thread = thread;
+            this.leaf = leaf;
+            this.line = line;
+            this.from = from;
+            this.start = start;
+        }
+    }
+
+    /**
+     * One command that ran over budget.
+     */
+    public static class SlowCommand {
+        private static final StackTraceElement[] NOT_SAMPLED = new StackTraceElement[0];
+
+        private final String path;
+        private final List<String> args;
+        private final long elapsedNanos;
+        private final StackTraceElement[] stack;
+
+        private SlowCommand(String path, String[] args, long elapsedNanos, StackTraceElement[] stack) {
+            this.path = path;
+            this.args = Collections.unmodifiableList(Arrays.asList(args));
+            this.elapsedNanos = elapsedNanos;
+            this.stack = stack == null ? NOT_SAMPLED : stack;
+        }
+
+        /**
+         *
+         * @return the command's path, with literals by their canonical names and arguments in the
+         * path as typed
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         *
+         * @return the arguments typed after the command's path
+         */
+        public List<String> getArgs() {
+            return args;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         *
+         * @return the stack of the thread running the command, sampled once it went over budget,
+         * or an empty array if it finished before it could be sampled
+         */
+        public StackTraceElement[] getStackTrace() {
+            return stack.clone();
+        }
+    }
+}
@@ -18,16 +18,25 @@ package cafe.josh.reflective;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.SortedMap;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import cafe.josh.reflective.annotation.CommandMethod;
+import cafe.josh.reflective.audit.AuditLog;
+import cafe.josh.reflective.convert.ConverterRegistry;
 import cafe.josh.reflective.io.DotWriter;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
@@ -35,13 +44,28 @@ import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 
 /**
+ *
+ * The tree is copy-on-write: dispatch and tab completion read an immutable snapshot without
+ * locking, while add() and remove() build a new snapshot and swap it in atomically. It's safe to
+ * add and remove CommandDefinitions while other threads are running or completing commands.
  *
  * @author joshua
  */
 public class TreeCommandExecutor implements CommandExecutor {
 
-    private CommandNode root;
-    private Set<CommandLeaf> leaves;
+    private static final int MAX_SUGGESTIONS = 3, MAX_SUGGESTION_DISTANCE = 3;
+    private static final String HELP = "help";
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private final boolean ignoreCase;
+    private final AtomicReference<Snapshot> tree;
+    private volatile CompletionCache completionCache;
+    private final ConcurrentMap<String, ArgumentCompleter> completers;
+    private volatile boolean metricsEnabled;
+    private volatile List<CommandInterceptor> interceptors;
+    private volatile TickBudgetWatchdog watchdog;
+    private volatile AuditLog auditLog;
+    private volatile int helpPageSize;
 
     /**
      * Creates a new instance of a TreeCommandExecutor
@@ -49,49 +73,288 @@ public class TreeCommandExecutor implements CommandExecutor {
      * It is ready to have leaves added to it and to be set as the executor for a command
      */
     public TreeCommandExecutor() {
-        root = new CommandNode(null, "/");
-        leaves = new HashSet<>();
+        this(false);
+    }
+
+    /**
+     * Creates a new instance of a TreeCommandExecutor
+     *
+     * @param ignoreCase if true, the parts of a command's path match regardless of case (so
+     * "/Sample CMD1" runs "sample cmd1"), and tab completion matches prefixes regardless of case.
+     * Arguments are passed to commands exactly as typed either way.
+     */
+    public TreeCommandExecutor(boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+        tree = new AtomicReference<>(new Snapshot(new CommandNode("/", ignoreCase), Collections.emptySet()));
+        completers = new ConcurrentHashMap<>();
+        interceptors = Collections.emptyList();
     }
 
+    /**
+     *
+     * @return true if command paths are matched case-insensitively
+     */
+    public boolean isCaseInsensitive() {
+        return ignoreCase;
+    }
+
+    /**
+     * Adds all of c's CommandMethods to the tree.
+     *
+     * Every method's signature is checked and the new tree is built before any of them are added,
+     * so a definition with an unsupported or duplicate method is rejected as a whole.
+     *
+     * @param c the definition to add
+     *
+     * @throws CommandLeaf.UnsupportedParameterException if any CommandMethod's parameters can't be
+     * bound
+     * @throws RuntimeException if a duplicate command is added
+     */
     public void add(final CommandDefinition c) {
-        Method[] methods = c.getClass().getMethods();
+        List<CommandLeaf> defined = getGeneratedLeaves(c);
 
-        for(final Method m : methods) {
-            final CommandMethod cmdInfo = (CommandMethod) m.getAnnotation(CommandMethod.class);
-            if(cmdInfo == null) {
-                continue;
+        if(defined == null) {
+            Method[] methods = c.getClass().getMethods();
+            defined = new ArrayList<>(methods.length);
+
+            for(final Method m : methods) {
+                final CommandMethod cmdInfo = (CommandMethod) m.getAnnotation(CommandMethod.class);
+                if(cmdInfo == null) {
+                    continue;
+                }
+
+                defined.add(new CommandLeaf(cmdInfo, m, c));
             }
+        }
 
-            CommandLeaf f = new CommandLeaf(cmdInfo, m, c);
-            add(f);
+        add(defined);
+    }
+
+    /**
+     * Looks for a CommandDispatcher that CommandMethodProcessor generated for c's class.
+     *
+     * @param c
+     * @return the leaves the generated dispatcher built, or null if c has no generated dispatcher
+     */
+    @SuppressWarnings("unchecked")
+    private static List<CommandLeaf> getGeneratedLeaves(CommandDefinition c) {
+        Class<?> definitionClass = c.getClass();
+        try {
+            Class<?> dispatcherClass = Class.forName(definitionClass.getName() + CommandDispatcher.CLASS_SUFFIX, true, definitionClass.getClassLoader());
+            CommandDispatcher<CommandDefinition> dispatcher = (CommandDispatcher<CommandDefinition>) dispatcherClass.newInstance();
+            return dispatcher.getLeaves(c);
+        } catch(ClassNotFoundException ex) {
+            return null;
+        } catch(InstantiationException | IllegalAccessException | ClassCastException ex) {
+            Logger.getLogger(TreeCommandExecutor.class.getName()).log(Level.WARNING, "Couldn't use generated dispatcher for " + definitionClass.getName() + ", falling back to reflection", ex);
+            return null;
         }
     }
 
     /**
      *
-     * @param cmd the commandleaf to be added
+     * @param cmds the commandleaves to be added
      *
      * @throws RuntimeException if a duplicate command is added
      */
-    private void add(CommandLeaf cmd) {
-        CommandNode temp = root;
-        for(String s : cmd.getStringNodes()) {
-            CommandNode next = temp.getChild(s);
+    private void add(List<CommandLeaf> cmds) {
+        //locked so an interceptor can't be added between composing cmds and publishing them
+        synchronized(this) {
+            List<CommandInterceptor> chain = interceptors;
+            cmds.forEach(cmd -> cmd.setInterceptors(chain));
+
+            tree.updateAndGet(cur -> {
+                CommandNode newRoot = cur.root;
+                for(CommandLeaf cmd : cmds) {
+                    newRoot = newRoot.with(cmd, 0);
+                }
+
+                Set<CommandLeaf> newLeaves = new HashSet<>(cur.leaves);
+                newLeaves.addAll(cmds);
+                return new Snapshot(newRoot, newLeaves);
+            });
+        }
+        treeChanged();
+    }
 
-            if(next == null) {
-                next = new CommandNode(temp, s);
-                temp.addChild(next);
+    /**
+     * Removes all of c's commands from the tree, along with any nodes that no longer lead to a
+     * command.
+     *
+     * @param c the definition to remove (the same instance that was added)
+     * @return true if any commands were removed
+     */
+    public boolean remove(final CommandDefinition c) {
+        Snapshot before = tree.getAndUpdate(cur -> {
+            CommandNode newRoot = cur.root;
+            Set<CommandLeaf> newLeaves = new HashSet<>(cur.leaves);
+            for(CommandLeaf cmd : cur.leaves) {
+                if(cmd.getDefinition() == c) {
+                    newRoot = newRoot.without(cmd, 0);
+                    newLeaves.remove(cmd);
+                }
             }
 
-            temp = next;
+            return newLeaves.size() == cur.leaves.size() ? cur : new Snapshot(newRoot, newLeaves);
+        });
+        treeChanged();
+
+        return before.leaves.stream().anyMatch(cmd -> cmd.getDefinition() == c);
+    }
+
+    /**
+     * Drops anything derived from an older version of the tree.
+     */
+    private void treeChanged() {
+        CompletionCache c = completionCache;
+        if(c != null) {
+            c.clear();
         }
+    }
+
+    /**
+     * Caches tab completion results, so repeated requests for the same partial token at the same
+     * place in the tree return a shared list instead of recomputing it. Replaces any existing cache.
+     *
+     * @param maximumSize the most results to keep; the least recently used are evicted first
+     */
+    public void enableCompletionCache(int maximumSize) {
+        completionCache = new CompletionCache(maximumSize);
+    }
+
+    public void disableCompletionCache() {
+        completionCache = null;
+    }
+
+    /**
+     *
+     * @return the completion cache (for its statistics), or null if it isn't enabled
+     */
+    public CompletionCache getCompletionCache() {
+        return completionCache;
+    }
+
+    /**
+     * Makes c available to parameters annotated with @CompleteWith(name). Replaces any completer
+     * already registered under name.
+     *
+     * @param name
+     * @param c
+     */
+    public void registerCompleter(String name, ArgumentCompleter c) {
+        completers.put(name, c);
+    }
+
+    public void unregisterCompleter(String name) {
+        completers.remove(name);
+    }
 
-        if(temp.executable != null) {
-            throw new RuntimeException("Error: leaf node already has command bound");
+    /**
+     * Adds an interceptor around every command it applies to, inside any interceptors already
+     * added. The chain is recomposed for each leaf now, rather than on every call.
+     *
+     * @param i
+     */
+    public synchronized void addInterceptor(CommandInterceptor i) {
+        List<CommandInterceptor> chain = new ArrayList<>(interceptors);
+        chain.add(i);
+        setInterceptors(chain);
+    }
+
+    /**
+     *
+     * @param i
+     * @return true if i had been added
+     */
+    public synchronized boolean removeInterceptor(CommandInterceptor i) {
+        List<CommandInterceptor> chain = new ArrayList<>(interceptors);
+        boolean removed = chain.remove(i);
+        if(removed) {
+            setInterceptors(chain);
         }
 
-        temp.executable = cmd;
-        leaves.add(cmd);
+        return removed;
+    }
+
+    private void setInterceptors(List<CommandInterceptor> chain) {
+        interceptors = Collections.unmodifiableList(chain);
+        tree.get().leaves.forEach(leaf -> leaf.setInterceptors(interceptors));
+    }
+
+    /**
+     * Times every command against w's budget. Replaces any existing watchdog (without closing it).
+     *
+     * @param w the watchdog, or null to stop watching
+     */
+    public void setWatchdog(TickBudgetWatchdog w) {
+        watchdog = w;
+    }
+
+    public TickBudgetWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * Records every command the audit log's filter accepts, whether it ran or was denied. Replaces
+     * any existing audit log (without closing it).
+     *
+     * @param log the audit log, or null to stop auditing
+     */
+    public void setAuditLog(AuditLog log) {
+        auditLog = log;
+    }
+
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    /**
+     * Answers "/&lt;root&gt; help [page] [filter]" (unless the root has its own help command) with a
+     * page of the root's commands, listing only those the sender can run. The filter matches the
+     * start of a command's path below the root. Typing an incomplete command that has more than a
+     * page of possible completions shows the first page of help for it, instead of every completion.
+     *
+     * @param pageSize how many commands to list per page
+     */
+    public void enableHelp(int pageSize) {
+        if(pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+
+        helpPageSize = pageSize;
+    }
+
+    public void disableHelp() {
+        helpPageSize = 0;
+    }
+
+    /**
+     * Starts recording invocations, failures and latencies in each leaf's CommandMetrics. While
+     * disabled (the default), dispatch doesn't touch the metrics or read the clock at all.
+     */
+    public void enableMetrics() {
+        metricsEnabled = true;
+    }
+
+    public void disableMetrics() {
+        metricsEnabled = false;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     *
+     * @return a snapshot of each leaf's metrics, keyed and sorted by its (canonical) path
+     */
+    public SortedMap<String, CommandMetrics.Snapshot> getMetrics() {
+        SortedMap<String, CommandMetrics.Snapshot> ret = new TreeMap<>();
+        for(CommandLeaf leaf : tree.get().leaves) {
+            ret.put(String.join(" ", leaf.getStringNodes()), leaf.getMetrics().snapshot());
+        }
+
+        return ret;
     }
 
     /**
@@ -105,130 +368,400 @@ public class TreeCommandExecutor implements CommandExecutor {
      */
     @Override
     public final boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
-        TraversalResult r = traverseToEnd(command.getName(), args);
+        return dispatch(sender, command, command.getName(), new CommandLine(args));
+    }
+
+    /**
+     * Runs a command from the raw line the sender typed (e.g. from a PlayerCommandPreprocessEvent),
+     * instead of from arguments Bukkit has already split. Quoted arguments ("my home") are kept
+     * together, and arguments are parsed straight from the line, so only the ones bound to String
+     * parameters are ever copied. Commands run this way are passed a null Command.
+     *
+     * @param sender
+     * @param commandLine e.g. "/warp set \"my home\""
+     * @return false if commandLine doesn't name a command in this tree
+     */
+    public boolean dispatch(CommandSender sender, CharSequence commandLine) {
+        int start = 0, end = commandLine.length();
+        while(start < end && Character.isWhitespace(commandLine.charAt(start))) {
+            start++;
+        }
+        if(start < end && commandLine.charAt(start) == '/') {
+            start++;
+        }
+
+        int nameEnd = start;
+        while(nameEnd < end && !Character.isWhitespace(commandLine.charAt(nameEnd))) {
+            nameEnd++;
+        }
+
+        if(tree.get().root.getChild(commandLine, start, nameEnd) == null) {
+            return false;
+        }
+
+        return dispatch(sender, null, commandLine.subSequence(start, nameEnd).toString(), new CommandLine(commandLine, nameEnd));
+    }
+
+    private boolean dispatch(CommandSender sender, Command command, String name, CommandLine line) {
+        Snapshot snapshot = tree.get();
+        CommandNode root = snapshot.root;
+        TraversalResult r = traverseToEnd(root, name, line);
 
         CommandNode selectedLeaf = r.node;
         int i = r.argsPosition;
 
         if(selectedLeaf == null) {
-            sendInvalidCommandHelp(sender, root, selectedLeaf, args[i]);
+            sendInvalidCommandHelp(sender, "", root, name);
             return true;
         }
         //once we reach the end, assume the rest of the stuff in args are actually arguments
         if(selectedLeaf.executable == null) {
-            sendIncompleteCommandHelp(sender, root, selectedLeaf);
+            //the sender needs help, so it's no longer worth avoiding copies
+            String[] args = line.toArray(0);
+            int pageSize = helpPageSize;
+            if(pageSize > 0 && i == 0 && args.length > 0 && args[0].equalsIgnoreCase(HELP)) {
+                sendHelp(sender, snapshot, selectedLeaf.nodeString, args, pageSize);
+                return true;
+            } else if(pageSize > 0 && i == args.length && selectedLeaf.getChildCount() > pageSize) {
+                String subpath = composeCanonicalSubpath(root.getChild(name), args, 0, i, selectedLeaf);
+                sendHelpPage(sender, snapshot, root.getChild(name).nodeString, subpath.isEmpty() ? "" : subpath + " ", 1, pageSize);
+                return true;
+            }
+
+            String parentage = composeCommandParentage(name, args, i);
+            if(i < args.length) {
+                sendInvalidCommandHelp(sender, parentage, selectedLeaf, args[i]);
+            } else {
+                sendIncompleteCommandHelp(sender, parentage, selectedLeaf);
+            }
             return true;
         }
 
-        String[] cmdArgs = new String[args.length - i];
-        System.arraycopy(args, i, cmdArgs, 0, cmdArgs.length);
+        CommandLeaf leaf = selectedLeaf.executable;
+        CommandMetrics metrics = metricsEnabled ? leaf.getMetrics() : null;
+        AuditLog audit = auditLog;
+        boolean audited = audit != null && audit.audits(leaf);
+        long start = metrics != null || audited ? System.nanoTime() : 0;
+
+        CommandMetrics.Failure failure = run(sender, command, leaf, r.values, line, i);
+
+        if(metrics != null || audited) {
+            long elapsed = System.nanoTime() - start;
+            if(metrics != null) {
+                metrics.recordInvocation();
+                if(failure != null) {
+                    metrics.recordFailure(failure);
+                }
+                //only commands that actually ran have a latency worth recording
+                if(failure == null) {
+                    metrics.recordLatency(elapsed);
+                }
+            }
+            if(audited) {
+                audit.record(sender, leaf, line.toArray(0), failure, elapsed);
+            }
+        }
 
-        if(cmdArgs.length < selectedLeaf.executable.getNumRequiredArgs()) {
-            sender.sendMessage(selectedLeaf.executable.getMissingRequiredArgsHelpMessage());
-            return true;
+        return true;
+    }
+
+    /**
+     * Runs leaf, or tells sender why it can't be run.
+     *
+     * @param values leaf's path arguments, converted while its path was matched
+     * @param from where leaf's arguments start in line
+     * @return why leaf didn't run, or null if it ran
+     */
+    private CommandMetrics.Failure run(CommandSender sender, Command command, CommandLeaf leaf, Object[] values, CommandLine line, int from) {
+        if(leaf.getNumRequiredArgs() > 0 && !line.has(from + leaf.getNumRequiredArgs() - 1)) {
+            sender.sendMessage(leaf.getMissingRequiredArgsHelpMessage());
+            return CommandMetrics.Failure.MISSING_ARGS;
         }
+
+        TickBudgetWatchdog w = watchdog;
+        TickBudgetWatchdog.Call watched = w == null ? null : w.begin(leaf, line, from);
         try {
-            selectedLeaf.executable.execute(sender, command, cmdArgs);
+            return leaf.run(sender, command, values, line, from);
         } catch(InsufficientPermissionException ex) {
             if(ex.hasCustomMessage()) {
                 sender.sendMessage(ChatColor.RED + ex.getCustomMessage());
             } else {
                 sender.sendMessage(ChatColor.RED + "You don't have permission to run this command.");
             }
-            return true;
+            return CommandMetrics.Failure.PERMISSION;
         } catch(UnsupportedCommandSenderException ex) {
             sender.sendMessage(ChatColor.RED + ex.getLocalizedMessage());
-            return true;
+            return CommandMetrics.Failure.SENDER_TYPE;
+        } finally {
+            if(watched != null) {
+                w.end(watched);
+            }
         }
+    }
 
-        return true;
+    /**
+     *
+     * @return
+     */
+    public Set<CommandLeaf> getLeaves() {
+        return tree.get().leaves;
     }
 
-    private static List<String> composeChildNodesString(CommandNode selectedLeaf) {
-        List<String> ret = new LinkedList<>();
-        selectedLeaf.children.values().stream().forEach((child) -> {
-            ret.add(child.nodeString);
-        });
+    /**
+     * They didn't type a complete command, so tell them what they might want to type next. Sent as
+     * one batch, and only the first line (which has what they typed in it) is built per call.
+     */
+    private static void sendIncompleteCommandHelp(CommandSender sender, String parentage, CommandNode selectedLeaf) {
+        String[] completions = selectedLeaf.getCompletionHelp();
+        String[] lines = new String[completions.length + 1];
+        lines[0] = ChatColor.RED + "Incomplete command: \"/" + parentage + "\"";
+        System.arraycopy(completions, 0, lines, 1, completions.length);
+        sender.sendMessage(lines);
+    }
 
-        return ret;
+    private static void sendInvalidCommandHelp(CommandSender sender, String parentage, CommandNode currentNode, String invalidNodeString) {
+        String typed = parentage.isEmpty() ? "" : parentage + " ";
+        String invalid = ChatColor.RED + "Invalid command: \"" + ChatColor.DARK_RED + typed + invalidNodeString + ChatColor.RED + "\"";
+
+        int maxDistance = Math.min(MAX_SUGGESTION_DISTANCE, Math.max(1, invalidNodeString.length() / 3));
+        List<String> closest = currentNode.getClosestLabels(invalidNodeString, maxDistance, MAX_SUGGESTIONS);
+        if(!closest.isEmpty()) {
+            StringBuilder b = new StringBuilder().append(ChatColor.YELLOW).append("Did you mean ");
+            for(int i = 0; i < closest.size(); i++) {
+                if(i > 0) {
+                    b.append(" or ");
+                }
+                b.append(ChatColor.AQUA).append('/').append(typed).append(closest.get(i)).append(ChatColor.YELLOW);
+            }
+            sender.sendMessage(new String[]{invalid, b.append('?').toString()});
+        } else if(!parentage.isEmpty()) {
+            sender.sendMessage(new String[]{invalid, ChatColor.YELLOW + "Type " + ChatColor.AQUA + "/" + parentage + ChatColor.YELLOW + " to see possible completions."});
+        } else {
+            sender.sendMessage(invalid);
+        }
     }
 
     /**
      *
-     * @return
+     * @param root the canonical name of the root command
+     * @param args what the sender typed after the root: "help [page] [filter]"
      */
-    public Set<CommandLeaf> getLeaves() {
-        return Collections.unmodifiableSet(leaves);
+    private void sendHelp(CommandSender sender, Snapshot snapshot, String root, String[] args, int pageSize) {
+        int page = 1, filterStart = 1;
+        //converted like any Integer argument, without an exception when it's the start of the filter
+        Integer typedPage = args.length > 1 ? ConverterRegistry.getDefault().get(Integer.class).tryConvert(args[1], 0, args[1].length()) : null;
+        if(typedPage != null) {
+            page = typedPage;
+            filterStart = 2;
+        }
+
+        String filter = String.join(" ", Arrays.asList(args).subList(filterStart, args.length));
+        sendHelpPage(sender, snapshot, root, filter, page, pageSize);
     }
 
-    private static void sendIncompleteCommandHelp(CommandSender sender, CommandNode root, CommandNode selectedLeaf) {
-        //they didn't type a complete command, so tell them what they might want to type next
-        //print children node strings
-        sender.sendMessage(ChatColor.RED + "Incomplete command: \"/" + composeCommandParentage(root, selectedLeaf) + "\"");
-        sender.sendMessage(ChatColor.YELLOW + "Possible completions:");
-        composeChildNodesString(selectedLeaf).stream().forEach((s) -> {
-            sender.sendMessage(ChatColor.AQUA + s);
-        });
+    private void sendHelpPage(CommandSender sender, Snapshot snapshot, String root, String filter, int page, int pageSize) {
+        HelpIndex.Page p = snapshot.getHelpIndex(ignoreCase).get(root).page(sender, filter, page, pageSize);
+        String trimmedFilter = filter.trim(), shownFilter = trimmedFilter.isEmpty() ? "" : " " + trimmedFilter;
+
+        boolean hasNext = p.page < p.pageCount;
+        String[] lines = new String[1 + Math.max(1, p.lines.length) + (hasNext ? 1 : 0)];
+        lines[0] = ChatColor.YELLOW + "Help for " + ChatColor.AQUA + "/" + root + shownFilter + ChatColor.YELLOW + " (page " + p.page + " of " + p.pageCount + "):";
+        if(p.lines.length == 0) {
+            lines[1] = ChatColor.RED + "No commands you can run match.";
+        } else {
+            System.arraycopy(p.lines, 0, lines, 1, p.lines.length);
+        }
+        if(hasNext) {
+            lines[lines.length - 1] = ChatColor.YELLOW + "Type " + ChatColor.AQUA + "/" + root + " " + HELP + " " + (p.page + 1) + shownFilter + ChatColor.YELLOW + " for the next page.";
+        }
+
+        sender.sendMessage(lines);
     }
 
-    private static void sendInvalidCommandHelp(CommandSender sender, CommandNode root, CommandNode currentNode, String invalidNodeString) {
-        sender.sendMessage(String.format("%sInvalid command: \"%s%s%s\"", ChatColor.RED, ChatColor.DARK_RED, composeCommandParentage(root, currentNode) + " " + invalidNodeString, ChatColor.RED));
-        sender.sendMessage(String.format("%sPossible replacements for \"%s%s%s\"", ChatColor.YELLOW, ChatColor.DARK_RED, invalidNodeString, ChatColor.YELLOW));
-        composeChildNodesString(currentNode).stream().forEach((s) -> {
-            sender.sendMessage(ChatColor.AQUA + s);
-        });
+    /**
+     * Retraces the way traverseToEnd() went from n to target, which may not be the first way args
+     * fit, since it can backtrack.
+     *
+     * @return the canonical names of the nodes args[i] to args[depth - 1] matched on the way from n
+     * to target, space-separated, or null if they don't lead there
+     */
+    private static String composeCanonicalSubpath(CommandNode n, String[] args, int i, int depth, CommandNode target) {
+        if(i == depth) {
+            return n == target ? "" : null;
+        }
+
+        CommandNode label = n.getChild(args[i]);
+        List<CommandNode> candidates = new ArrayList<>();
+        if(label != null) {
+            candidates.add(label);
+        } else {
+            for(int a = 0; a < n.getArgumentCount(); a++) {
+                if(n.getArgument(a).convert(args[i]) != null) {
+                    candidates.add(n.getArgument(a).child);
+                }
+            }
+        }
+
+        for(CommandNode c : candidates) {
+            String rest = composeCanonicalSubpath(c, args, i + 1, depth, target);
+            if(rest != null) {
+                return rest.isEmpty() ? c.nodeString : c.nodeString + " " + rest;
+            }
+        }
+
+        return null;
     }
 
-    private static String composeCommandParentage(CommandNode root, CommandNode n) {
-        return n.parent == root ? n.nodeString : composeCommandParentage(root, n.parent) + " " + n.nodeString;
+    /**
+     * Nodes don't know their parents (so subtrees can be shared between versions of the tree), so
+     * the parentage is rebuilt from what the user typed to get there.
+     *
+     * @param name the command's name
+     * @param args the args the user typed
+     * @param depth how many of args were matched to nodes
+     * @return the command path the user typed, minus the leading slash
+     */
+    private static String composeCommandParentage(String name, String[] args, int depth) {
+        StringBuilder b = new StringBuilder(name);
+        for(int i = 0; i < depth; i++) {
+            b.append(' ').append(args[i]);
+        }
+
+        return b.toString();
     }
 
+    /**
+     *
+     * @param name the command's name
+     * @param args what the user has typed so far
+     * @return an unmodifiable, sorted list of possible completions for the last token in args
+     */
     public List<String> getTabCompletions(String name, String[] args) {
-        TraversalResult r = traverseToEnd(name, args);
+        return getTabCompletions(null, name, args);
+    }
+
+    /**
+     * Completes the last token in args. If it's where the next part of a command's path would go,
+     * that's the matching child nodes. If it's an argument to a command, it's whatever that
+     * parameter's ArgumentCompleter (or else its ArgumentConverter) suggests. It can be both.
+     *
+     * @param sender the sender asking, or null if unknown
+     * @param name the command's name
+     * @param args what the user has typed so far
+     * @return an unmodifiable list of possible completions for the last token in args
+     */
+    public List<String> getTabCompletions(CommandSender sender, String name, String[] args) {
+        TraversalResult r = traverseToEnd(tree.get().root, name, new CommandLine(args));
+
+        if(r.node == null) {
+            return Collections.emptyList();
+        } else if(r.argsPosition == args.length) {
+            //nothing typed past the last matched node, so everything below it is a completion
+            return r.node.getLabels();
+        }
 
-        if(r.argsPosition < args.length - 1) {
-            return Collections.EMPTY_LIST;
+        String partial = args[args.length - 1];
+        int argIndex = args.length - 1 - r.argsPosition;
+
+        List<String> paths = argIndex == 0 ? completePath(sender, r.node, partial) : Collections.emptyList();
+        List<String> arguments = r.node.executable == null
+                ? Collections.emptyList()
+                : r.node.executable.completeArgument(sender, argIndex, partial, completers::get);
+
+        if(arguments.isEmpty()) {
+            return paths;
+        } else if(paths.isEmpty()) {
+            return arguments;
         } else {
-            List<String> ret;
-            //if there's exactly one token remaining, try to filter
-            if(r.argsPosition == args.length - 1) {
-                ret = r.node.children.keySet().stream()
-                        .filter(s -> s.startsWith(args[r.argsPosition]))
-                        .collect(Collectors.toList());
-            } else {
-                ret = new ArrayList<>(r.node.children.keySet().size());
-                ret.addAll(r.node.children.keySet());
-            }
+            List<String> ret = new ArrayList<>(paths.size() + arguments.size());
+            ret.addAll(paths);
+            ret.addAll(arguments);
+            return Collections.unmodifiableList(ret);
+        }
+    }
 
-            return ret;
+    /**
+     * Completes the labels below node (cached, if the cache is enabled), then whatever node's
+     * argument children suggest (never cached, since it can change without the tree changing).
+     */
+    private List<String> completePath(CommandSender sender, CommandNode node, String prefix) {
+        CompletionCache c = completionCache;
+        List<String> labels = c == null ? node.getLabelsStartingWith(prefix) : c.get(node, prefix, () -> node.getLabelsStartingWith(prefix));
+        if(node.getArgumentCount() == 0) {
+            return labels;
         }
+
+        List<String> ret = new ArrayList<>(labels);
+        for(int i = 0; i < node.getArgumentCount(); i++) {
+            ret.addAll(node.getArgument(i).complete(sender, prefix));
+        }
+        return Collections.unmodifiableList(ret);
     }
 
     /**
      * Traverses as far down the tree as it can go
      *
+     * @param root the root of the snapshot of the tree to traverse
      * @param name the command's actual name, i.e. Command#getName()
      * @param args the args the user typed, used to traverse tree
      * @return the last node that could be matched + the index that failed to match any further
-     * nodes (either because there were no more nodes or none of them matched)
+     * nodes (either because there were no more nodes or none of them matched) + the values of the
+     * path arguments matched on the way
      */
-    private TraversalResult traverseToEnd(String name, String[] args) {
-        CommandNode cur = null, next = root.getChild(name);
+    private static TraversalResult traverseToEnd(CommandNode root, String name, CommandLine args) {
+        CommandNode first = root.getChild(name);
+        //Bukkit wants name and args separate, so the thing before args[0] is name, which we just processed
+        return first == null ? new TraversalResult(null, 0, NO_VALUES) : traverseFrom(first, args, 0, 0);
+    }
 
-        int i = -1; //Bukkit wants name and args separate, so the thing before args[0] is name, which we just processed
-        while(next != null) {
-            i++;
-            cur = next;
-            if(!cur.children.isEmpty() && i < args.length) {
-                next = cur.getChild(args[i]);
-            } else {
-                next = null;
+    /**
+     * Matches args from index i on, starting below cur. A label is always taken if one matches.
+     * Otherwise each argument child the token converts to is tried, narrowest type first, and the
+     * one whose branch matches the most of args wins (ties go to a branch ending at a command, then
+     * to the narrower type).
+     *
+     * @param cur the node args[i - 1] (or the name, if i is 0) matched
+     * @param i
+     * @param numValues how many path arguments were matched on the way to cur
+     * @return as traverseToEnd(), with room at the front of values for the ones already matched
+     */
+    private static TraversalResult traverseFrom(CommandNode cur, CommandLine args, int i, int numValues) {
+        while(cur.hasChildren() && args.has(i)) {
+            CharSequence s = args.source(i);
+            int start = args.start(i), end = args.end(i);
+            CommandNode next = cur.getChild(s, start, end);
+            if(next != null) {
+                cur = next;
+                i++;
+                continue;
+            }
+
+            //only a token that isn't a label is converted, and it's converted here, once per type
+            TraversalResult best = null;
+            for(int a = 0; a < cur.getArgumentCount(); a++) {
+                Object value = cur.getArgument(a).convert(s, start, end);
+                if(value == null) {
+                    continue;
+                }
+
+                TraversalResult r = traverseFrom(cur.getArgument(a).child, args, i + 1, numValues + 1);
+                r.values[numValues] = value;
+                if(best == null || r.isBetterThan(best)) {
+                    best = r;
+                }
+                if(best.node.executable != null && !args.has(best.argsPosition)) {
+                    //nothing can match more than all of it
+                    break;
+                }
+            }
+
+            if(best != null) {
+                return best;
             }
+            break;
         }
 
-        //The contract of argsPosition is that it's the beginning pos in args[] that's args,
-        //so we shouldn't return -1
-        return new TraversalResult(cur, cur == null ? 0 : i);
+        return new TraversalResult(cur, i, numValues == 0 ? NO_VALUES : new Object[numValues]);
     }
 
     private static class TraversalResult {
@@ -245,53 +778,91 @@ public class TreeCommandExecutor implements CommandExecutor {
          * of a malformed command
          */
         int argsPosition;
+        /**
+         * The converted values of the path arguments between the root and node, in order
+         */
+        Object[] values;
 
-        public TraversalResult(CommandNode node, int argsPosition) {
+        public TraversalResult(CommandNode node, int argsPosition, Object[] values) {
             this.node = node;
             this.argsPosition = argsPosition;
+            this.values = values;
         }
-    }
 
-    private class CommandNode {
-
-        CommandNode parent;
-        CommandLeaf executable;
-        String nodeString;
-        Map<String, CommandNode> children;
+        /**
+         *
+         * @param other
+         * @return true if this matched more of the args than other, or as many but ends at a
+         * command where other doesn't
+         */
+        boolean isBetterThan(TraversalResult other) {
+            if(argsPosition != other.argsPosition) {
+                return argsPosition > other.argsPosition;
+            }
 
-        public CommandNode() {
-            children = new HashMap<>();
+            return node.executable != null && other.node.executable == null;
         }
+    }
 
-        public CommandNode(CommandNode parent, String nodeString) {
-            this.parent = parent;
-            this.nodeString = nodeString;
-            children = new HashMap<>();
+    /**
+     * One immutable version of the tree, and the leaves in it.
+     */
+    private static class Snapshot {
+        final CommandNode root;
+        final Set<CommandLeaf> leaves;
+        private volatile HelpIndex helpIndex;
+
+        public Snapshot(CommandNode root, Set<CommandLeaf> leaves) {
+            this.root = root;
+            this.leaves = Collections.unmodifiableSet(leaves);
         }
 
-        public void addChild(CommandNode n) {
-            children.put(n.nodeString, n);
-        }
+        /**
+         * Built the first time help is asked for in this version of the tree.
+         */
+        HelpIndex getHelpIndex(boolean ignoreCase) {
+            HelpIndex h = helpIndex;
+            if(h == null) {
+                h = new HelpIndex(root, leaves, ignoreCase);
+                helpIndex = h;
+            }
 
-        public CommandNode getChild(String nodeString) {
-            return children.get(nodeString);
+            return h;
         }
     }
 
     public void writeToGraph(DotWriter w) {
-        writeToGraph(w, root);
+        CommandNode root = tree.get().root;
+        writeToGraph(w, root, root.nodeString);
     }
 
-    private void writeToGraph(DotWriter w, CommandNode n) {
+    /**
+     * Aliased children are written once, labelled with all of their aliases (canonical name first).
+     */
+    private void writeToGraph(DotWriter w, CommandNode n, String label) {
         String curNode = n.nodeString + Objects.hashCode(n);
-        w.printLabel(curNode, n.nodeString);
-        if(n.children.isEmpty())
+        w.printLabel(curNode, label);
+        if(!n.hasChildren())
             return;
 
-        for(CommandNode child : n.children.values()) {
+        Map<CommandNode, StringJoiner> aliases = new LinkedHashMap<>();
+        for(int i = 0; i < n.getChildCount(); i++) {
+            CommandNode child = n.getChild(i);
+            StringJoiner childLabel = aliases.computeIfAbsent(child, c -> new StringJoiner("|").add(c.nodeString));
+            if(!n.getLabel(i).equals(child.nodeString)) {
+                childLabel.add(n.getLabel(i));
+            }
+        }
+
+        for(int i = 0; i < n.getArgumentCount(); i++) {
+            CommandNode child = n.getArgument(i).child;
+            aliases.put(child, new StringJoiner("|").add(child.nodeString));
+        }
+
+        aliases.forEach((child, childLabel) -> {
             String childNode = child.nodeString + Objects.hashCode(child);
             w.printEdge(curNode, childNode);
-            writeToGraph(w, child);
-        }
+            writeToGraph(w, child, childLabel.toString());
+        });
     }
 }
@@ -34,6 +34,6 @@ public class TreeTabCompleter implements TabCompleter {
 
     @Override
     public List<String> onTabComplete(CommandSender cs, Command cmnd, String string, String[] args) {
-        return tree.getTabCompletions(cmnd.getName(), args);
+        return tree.getTabCompletions(cs, cmnd.getName(), args);
     }
 }
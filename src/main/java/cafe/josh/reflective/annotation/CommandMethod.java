@@ -37,6 +37,14 @@ public @interface CommandMethod {
     /**
      * The command that the user will type to run the method, minus the leading slash
      *
+     * Any segment can list aliases separated by '|', canonical name first. "warp|w|tp2warp set"
+     * can be typed as "/warp set", "/w set" or "/tp2warp set". Aliases share a single node in the
+     * tree, so anything else registered under "warp" is reachable through "w" too.
+     *
+     * A segment like "&lt;name:Type&gt;" is an argument, bound to the method's first parameters
+     * after the sender, in order. "home &lt;name:String&gt; move &lt;x:Integer&gt;" can be typed as
+     * "/home base move 10".
+     *
      * @return
      */
     String path();
@@ -58,7 +66,7 @@ public @interface CommandMethod {
 
     /**
      * Number of required arguments to this command. If there are more parameters than required
-     * args, any arguments the player omits will be null.
+     * args, any arguments the player omits will be null, or their parameter's DefaultValue.
      *
      * @return
      */
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks which ArgumentCompleter suggests values for a CommandMethod's parameter.
+ *
+ * Ex: public void warp(Player p, @CompleteWith("warps") String warpName)
+ *
+ * @author joshua
+ * @see cafe.josh.reflective.ArgumentCompleter
+ * @see cafe.josh.reflective.TreeCommandExecutor#registerCompleter(String,
+ * cafe.josh.reflective.ArgumentCompleter)
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CompleteWith {
+    /**
+     * The name the completer was registered under
+     *
+     * @return
+     */
+    String value();
+}
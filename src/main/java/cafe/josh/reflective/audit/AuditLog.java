@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import cafe.josh.reflective.CommandLeaf;
+import cafe.josh.reflective.CommandMetrics;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+
+/**
+ * Writes a line to disk for each audited command, without making the thread running the command
+ * wait on disk I/O.
+ *
+ * Recording a command doesn't format or write anything: it just puts a small entry in a lock-free
+ * ring buffer. A background thread drains the buffer in batches, formats the entries and writes them through a
+ * FileChannel, rolling over to a new file whenever the current one passes a size limit. Files are
+ * named base-0.log, base-1.log, and so on, and numbering continues from any files already there.
+ *
+ * Each line is tab-separated: the time (ISO-8601), the sender's type and name, the outcome
+ * (EXECUTED, or the CommandMetrics.Failure that stopped it), the command line, and how long it took
+ * in microseconds.
+ *
+ * @author joshua
+ * @see cafe.josh.reflective.TreeCommandExecutor#setAuditLog(AuditLog)
+ */
+public class AuditLog implements AutoCloseable {
+    /**
+     * What to do with a command when the buffer is full because the writer can't keep up.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Don't record it (it's counted in getDroppedCount()). The command's thread never waits.
+         */
+        DROP,
+        /**
+         * Make the command's thread wait until there's room. Nothing is lost, but a slow disk can
+         * stall the server.
+         */
+        BLOCK;
+    }
+
+    private static final int BATCH_SIZE = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Path directory;
+    private final String baseName;
+    private final long maxFileBytes;
+    private final OverflowPolicy overflowPolicy;
+    private final Predicate<CommandLeaf> filter;
+    private final MpscRingBuffer<Entry> buffer;
+    private final LongAdder dropped, written, recording;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private FileChannel channel;
+    private long fileBytes, rollOverBytes;
+    private int fileIndex;
+
+    /**
+     * Creates an audit log of every command, keeping up to 8192 unwritten entries, with files
+     * rolling over at 16MB.
+     *
+     * @param directory
+     * @param baseName
+     * @param overflowPolicy
+     * @throws IOException if the directory can't be created or the first file can't be opened
+     */
+    public AuditLog(Path directory, String baseName, OverflowPolicy overflowPolicy) throws IOException {
+        this(directory, baseName, 8192, 16 * 1024 * 1024, overflowPolicy, leaf -> true);
+    }
+
+    /**
+     *
+     * @param directory where to write log files (created if it doesn't exist)
+     * @param baseName the start of each log file's name
+     * @param capacity how many entries can be waiting to be written (rounded up to a power of two)
+     * @param maxFileBytes once a file is this large, the next entry starts a new one
+     * @param overflowPolicy what to do when capacity entries are already waiting
+     * @param filter which commands to audit
+     * @throws IOException if the directory can't be created or the first file can't be opened
+     */
+    public AuditLog(Path directory, String baseName, int capacity, long maxFileBytes, OverflowPolicy overflowPolicy, Predicate<CommandLeaf> filter) throws IOException {
+        if(maxFileBytes <= 0) {
+            throw new IllegalArgumentException("maxFileBytes must be positive");
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.baseName = baseName;
+        this.maxFileBytes = maxFileBytes;
+        this.overflowPolicy = overflowPolicy;
+        this.filter = filter;
+        this.buffer = new MpscRingBuffer<>(capacity);
+        this.dropped = new LongAdder();
+        this.written = new LongAdder();
+        this.recording = new LongAdder();
+
+        this.fileIndex = findNextFileIndex();
+        openNextFile();
+        this.rollOverBytes = maxFileBytes;
+
+        this.writer = new Thread(this::writeLoop, "Reflective audit log writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     *
+     * @param leaf
+     * @return true if leaf's commands should be recorded
+     */
+    public boolean audits(CommandLeaf leaf) {
+        return filter.test(leaf);
+    }
+
+    /**
+     * Records a command. Returns as soon as it's buffered, unless the buffer is full and the
+     * overflow policy is BLOCK.
+     *
+     * @param sender who ran the command
+     * @param leaf the command
+     * @param args everything typed after the command's name, path included (not copied, so they
+     * mustn't be modified afterwards)
+     * @param failure why it didn't run, or null if it did
+     * @param nanos how long it took
+     * @return false if the entry was dropped (because the buffer was full, or the log is closed)
+     */
+    public boolean record(CommandSender sender, CommandLeaf leaf, String[] args, CommandMetrics.Failure failure, long nanos) {
+        //the writer doesn't stop while anyone is between checking closed and offering, so an entry
+        //that gets past the check is always written
+        recording.increment();
+        try {
+            if(closed) {
+                dropped.increment();
+                return false;
+            }
+
+            Entry e = new Entry(System.currentTimeMillis(), describe(sender), leaf, args, failure, nanos);
+            while(!buffer.offer(e)) {
+                if(overflowPolicy == OverflowPolicy.DROP || closed) {
+                    dropped.increment();
+                    return false;
+                }
+
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(this, FULL_PARK_NANOS);
+            }
+
+            return true;
+        } finally {
+            recording.decrement();
+        }
+    }
+
+    private static String describe(CommandSender sender) {
+        String type = sender instanceof Player ? "player" : sender instanceof ConsoleCommandSender ? "console" : sender.getClass().getSimpleName();
+        return type + ":" + sender.getName();
+    }
+
+    /**
+     *
+     * @return how many entries were discarded instead of written, including those lost to write
+     * errors
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Stops accepting entries, writes any that are still buffered, and closes the current file.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        ByteBuffer out = ByteBuffer.allocateDirect(64 * 1024);
+        StringBuilder line = new StringBuilder(256);
+        while(true) {
+            //read closed before draining, so nothing recorded before close() is left behind
+            boolean stopping = closed;
+            int drained = 0, pending = 0;
+            Entry e;
+            while(drained < BATCH_SIZE && (e = buffer.poll()) != null) {
+                line.setLength(0);
+                e.appendTo(line);
+                byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                if(fileBytes + out.position() >= rollOverBytes) {
+                    flush(out, pending);
+                    pending = 0;
+                    rollOver();
+                } else if(bytes.length > out.remaining()) {
+                    flush(out, pending);
+                    pending = 0;
+                }
+                if(bytes.length > out.capacity()) {
+                    count(write(ByteBuffer.wrap(bytes)), 1);
+                } else {
+                    out.put(bytes);
+                    pending++;
+                }
+                drained++;
+            }
+
+            flush(out, pending);
+
+            if(drained == BATCH_SIZE) {
+                continue;
+            } else if(stopping && recording.sum() == 0 && buffer.isEmpty()) {
+                break;
+            } else if(drained == 0) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+
+        try {
+            channel.close();
+        } catch(IOException ex) {
+            Logger.getLogger(AuditLog.class.getName()).log(Level.SEVERE, "Error closing audit log", ex);
+        }
+    }
+
+    /**
+     *
+     * @param entries how many entries out holds
+     */
+    private void flush(ByteBuffer out, int entries) {
+        out.flip();
+        count(write(out), entries);
+        out.clear();
+    }
+
+    private void count(boolean wrote, int entries) {
+        (wrote ? written : dropped).add(entries);
+    }
+
+    /**
+     *
+     * @return false if the bytes (or some of them) couldn't be written
+     */
+    private boolean write(ByteBuffer bytes) {
+        try {
+            while(bytes.hasRemaining()) {
+                fileBytes += channel.write(bytes);
+            }
+            return true;
+        } catch(IOException ex) {
+            Logger.getLogger(AuditLog.class.getName()).log(Level.SEVERE, "Error writing audit log, entries were lost", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Switches to the next file. If it can't be opened, keeps writing to the current one and tries
+     * again once that's grown by another maxFileBytes.
+     */
+    private void rollOver() {
+        FileChannel old = channel;
+        try {
+            openNextFile();
+        } catch(IOException ex) {
+            rollOverBytes = fileBytes + maxFileBytes;
+            Logger.getLogger(AuditLog.class.getName()).log(Level.SEVERE, "Error rolling audit log over to a new file, still writing to the old one", ex);
+            return;
+        }
+
+        rollOverBytes = maxFileBytes;
+        try {
+            old.close();
+        } catch(IOException ex) {
+            Logger.getLogger(AuditLog.class.getName()).log(Level.WARNING, "Error closing a full audit log file", ex);
+        }
+    }
+
+    /**
+     * Opens the file after the current one. Nothing changes if it can't be opened.
+     */
+    private void openNextFile() throws IOException {
+        Path p = directory.resolve(baseName + "-" + fileIndex + ".log");
+        FileChannel c = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        try {
+            fileBytes = c.size();
+        } catch(IOException ex) {
+            c.close();
+            throw ex;
+        }
+
+        channel = c;
+        fileIndex++;
+    }
+
+    private int findNextFileIndex() throws IOException {
+        int next = 0;
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, baseName + "-*.log")) {
+            for(Path p : files) {
+                String name = p.getFileName().toString();
+                String index = name.substring(baseName.length() + 1, name.length() - ".log".length());
+                try {
+                    next = Math.max(next, Integer.parseInt(index) + 1);
+                } catch(NumberFormatException ex) {
+                    //not one of ours
+                }
+            }
+        }
+
+        return next;
+    }
+
+    /**
+     * One recorded command. Formatting is left to the writer thread.
+     */
+    private static final class Entry {
+        final long time;
+        final String sender;
+        final CommandLeaf leaf;
+        final String[] args;
+        final CommandMetrics.Failure failure;
+        final long nanos;
+
+        Entry(long time, String sender, CommandLeaf leaf, String[] args, CommandMetrics.Failure failure, long nanos) {
+            this.time = time;
+            this.sender = sender;
+            this.leaf = leaf;
+            this.args = args;
+            this.failure = failure;
+            this.nanos = nanos;
+        }
+
+        void appendTo(StringBuilder b) {
+            b.append(Instant.ofEpochMilli(time)).append('\t');
+            appendEscaped(b, sender);
+            b.append('\t').append(failure == null ? "EXECUTED" : failure.name()).append("\t/");
+            //literals are written by their canonical names, path arguments and the rest as typed
+            appendEscaped(b, leaf.getStringAt(0));
+            for(int i = 0; i < args.length; i++) {
+                String literal = leaf.getArgumentTypeAt(i + 1) == null ? leaf.getStringAt(i + 1) : null;
+                b.append(' ');
+                appendEscaped(b, literal == null ? args[i] : literal);
+            }
+            b.append('\t').append(TimeUnit.NANOSECONDS.toMicros(nanos)).append('\n');
+        }
+
+        private static void appendEscaped(StringBuilder b, String s) {
+            for(int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if(c == '\t') {
+                    b.append("\\t");
+                } else if(c == '\n') {
+                    b.append("\\n");
+                } else if(c == '\r') {
+                    b.append("\\r");
+                } else if(c == '\\') {
+                    b.append("\\\\");
+                } else {
+                    b.append(c);
+                }
+            }
+        }
+    }
+}
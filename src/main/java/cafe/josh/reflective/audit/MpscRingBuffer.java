@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue for many producers and a single consumer.
+ *
+ * Producers claim a slot by advancing tail with a CAS, then publish into it. The consumer treats a
+ * null slot as not-yet-published, and frees a slot by nulling it before advancing head, so a
+ * producer can never claim a slot that's still waiting to be consumed.
+ *
+ * @author joshua
+ * @param <E>
+ */
+final class MpscRingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong tail;
+    private final AtomicLong head;
+
+    /**
+     *
+     * @param capacity rounded up to a power of two
+     */
+    MpscRingBuffer(int capacity) {
+        if(capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if(size < capacity) {
+            size <<= 1;
+        }
+
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.head = new AtomicLong();
+    }
+
+    /**
+     * Safe to call from any thread.
+     *
+     * @param e
+     * @return false if the buffer is full
+     */
+    boolean offer(E e) {
+        while(true) {
+            long t = tail.get();
+            if(t - head.get() > mask) {
+                return false;
+            }
+
+            if(tail.compareAndSet(t, t + 1)) {
+                slots.lazySet((int) t & mask, e);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Only the single consumer thread may call this.
+     *
+     * @return the oldest published element, or null if there isn't one
+     */
+    E poll() {
+        long h = head.get();
+        int i = (int) h & mask;
+        E e = slots.get(i);
+        if(e == null) {
+            return null;
+        }
+
+        slots.lazySet(i, null);
+        head.lazySet(h + 1);
+        return e;
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.convert;
+
+import java.util.Collections;
+import java.util.List;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Converts an argument the user typed into the type of the parameter it's bound to.
+ *
+ * Converters are looked up in a ConverterRegistry once, when a command is registered, so a command
+ * call never has to search for one. To make a type usable as a parameter, register a converter
+ * for it with ConverterRegistry.getDefault().register(), or list a public implementation with a
+ * no-arg constructor in META-INF/services/cafe.josh.reflective.convert.ArgumentConverter. The type
+ * it converts to is read from the class's own "implements ArgumentConverter&lt;T&gt;", so
+ * CommandMethodProcessor can check parameters against the same file at compile time.
+ *
+ * @param <T> the type converted to
+ * @author joshua
+ * @see ConverterRegistry
+ */
+@FunctionalInterface
+public interface ArgumentConverter<T> {
+    /**
+     * Converts a range of s, so arguments can be converted straight from the line the user typed.
+     *
+     * @param s holds the argument as typed
+     * @param start where the argument starts in s
+     * @param end where it ends
+     * @return the argument converted, never null
+     * @throws IllegalArgumentException if the argument can't be converted (the message is shown
+     * to the user, unless describeFailure() is overridden)
+     */
+    public T convert(CharSequence s, int start, int end);
+
+    public default T convert(String s) {
+        return convert(s, 0, s.length());
+    }
+
+    /**
+     * Like convert(), but returns null instead of throwing. Commands are run with this, since
+     * mistyped arguments are common and filling in an exception's stack trace for each one is
+     * expensive. The standard converters check their input rather than catching anything; this
+     * default catches convert()'s exception.
+     *
+     * @param s holds the argument as typed
+     * @param start where the argument starts in s
+     * @param end where it ends
+     * @return the argument converted, or null if it can't be
+     */
+    public default T tryConvert(CharSequence s, int start, int end) {
+        try {
+            return convert(s, start, end);
+        } catch(IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Explains why an argument couldn't be converted. Only called once tryConvert() has failed,
+     * so the message is never built for arguments that convert.
+     *
+     * @param s holds the argument as typed
+     * @param start where the argument starts in s
+     * @param end where it ends
+     * @return a message for the user
+     */
+    public default String describeFailure(CharSequence s, int start, int end) {
+        try {
+            convert(s, start, end);
+        } catch(IllegalArgumentException ex) {
+            return ex.getLocalizedMessage();
+        }
+
+        return "it can't be converted";
+    }
+
+    /**
+     * Suggests values during tab completion, for parameters without a @CompleteWith of their own.
+     *
+     * @param sender the sender asking, or null if unknown
+     * @param partial what the sender has typed of the argument so far
+     * @return possible values that start with partial (none, by default)
+     */
+    public default List<String> complete(CommandSender sender, String partial) {
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.convert;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Maps parameter types to the ArgumentConverters for them.
+ *
+ * A registry starts out with converters for the primitives (boxed or not), String, UUID, Duration
+ * (e.g. "1h30m"), Material, World and OfflinePlayer, and converts any enum by its constants'
+ * names. The default registry, which CommandLeaf uses, also loads every converter listed as a
+ * service (see ArgumentConverter) the first time it's used.
+ *
+ * Converters are looked up when a command is registered, so register custom converters before
+ * adding the CommandDefinitions that use them.
+ *
+ * @author joshua
+ */
+public class ConverterRegistry {
+    private final ConcurrentMap<Class<?>, ArgumentConverter<?>> converters;
+
+    /**
+     * Creates a registry with just the standard converters.
+     */
+    public ConverterRegistry() {
+        converters = new ConcurrentHashMap<>();
+        StandardConverters.registerAll(this);
+    }
+
+    /**
+     *
+     * @return the registry commands' parameters are resolved against
+     */
+    public static ConverterRegistry getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * Registers c for parameters of exactly type. Replaces any converter already registered for it.
+     *
+     * @param <T>
+     * @param type
+     * @param c
+     */
+    public <T> void register(Class<T> type, ArgumentConverter<? extends T> c) {
+        converters.put(type, c);
+    }
+
+    /**
+     *
+     * @param <T>
+     * @param type a class, or a primitive type (which uses its wrapper's converter)
+     * @return the converter for parameters of type, or null if there isn't one
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public <T> ArgumentConverter<T> get(Class<T> type) {
+        ArgumentConverter<?> c = converters.get(type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type);
+        if(c == null && type.isEnum()) {
+            c = converters.computeIfAbsent(type, t -> new StandardConverters.EnumConverter(t));
+        }
+
+        return (ArgumentConverter<T>) c;
+    }
+
+    public boolean canConvert(Class<?> type) {
+        return get(type) != null;
+    }
+
+    /**
+     * Registers every ArgumentConverter listed in loader's
+     * META-INF/services/cafe.josh.reflective.convert.ArgumentConverter files. Converters that can't
+     * be loaded are logged and skipped.
+     *
+     * @param loader
+     * @return how many converters were registered
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public int loadServices(ClassLoader loader) {
+        int loaded = 0;
+        Iterator<ArgumentConverter> it = ServiceLoader.load(ArgumentConverter.class, loader).iterator();
+        while(true) {
+            try {
+                if(!it.hasNext()) {
+                    break;
+                }
+
+                ArgumentConverter c = it.next();
+                Class<?> type = getConvertedType(c.getClass());
+                if(type == null) {
+                    throw new ServiceConfigurationError(c.getClass().getName() + " must implement ArgumentConverter<T> with a concrete T");
+                }
+                register((Class) type, c);
+                loaded++;
+            } catch(ServiceConfigurationError ex) {
+                Logger.getLogger(ConverterRegistry.class.getName()).log(Level.WARNING, "Skipping an argument converter", ex);
+            }
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Reads T from a class's (or a superclass's) "implements ArgumentConverter&lt;T&gt;", the same
+     * way CommandMethodProcessor does at compile time.
+     *
+     * @param converterClass
+     * @return T, or null if it isn't given as a class
+     */
+    static Class<?> getConvertedType(Class<?> converterClass) {
+        for(Class<?> k = converterClass; k != null; k = k.getSuperclass()) {
+            for(Type t : k.getGenericInterfaces()) {
+                if(t instanceof ParameterizedType && ((ParameterizedType) t).getRawType() == ArgumentConverter.class) {
+                    Type arg = ((ParameterizedType) t).getActualTypeArguments()[0];
+                    return arg instanceof Class ? (Class<?>) arg : null;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Initialization-on-demand, so services aren't loaded until a converter is first needed.
+     */
+    private static class DefaultHolder {
+        static final ConverterRegistry DEFAULT = new ConverterRegistry();
+
+        static {
+            DEFAULT.loadServices(ConverterRegistry.class.getClassLoader());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.convert;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Resolves Player and OfflinePlayer arguments by name without scanning every player.
+ *
+ * Names are kept in sorted maps (ordered by String.CASE_INSENSITIVE_ORDER), which are updated as
+ * players join and quit. An exact name is found by binary search, and every name starting with a
+ * prefix is one contiguous range of the map, which serves both unambiguous abbreviations and tab
+ * completion. Lookups are safe from any thread. Players are matched exactly as the standard
+ * converters match them; the index only makes it faster.
+ *
+ * @author joshua
+ * @see #register(Plugin)
+ */
+public class PlayerIndex implements Listener {
+    private final ConcurrentNavigableMap<String, Player> online;
+    private final ConcurrentNavigableMap<String, UUID> known;
+    private volatile boolean knownLoaded;
+
+    /**
+     * Creates an empty index. register() fills it and keeps it up to date.
+     */
+    public PlayerIndex() {
+        online = new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+        known = new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /**
+     * Indexes everyone who's online, listens for players joining and quitting, and makes the
+     * default ConverterRegistry resolve Player and OfflinePlayer arguments through this index. Call
+     * it before adding the CommandDefinitions that should use it.
+     *
+     * Everyone who has played before is indexed by an asynchronous task, since that means reading
+     * every player's data; until it's done, offline players are looked up through Bukkit instead.
+     *
+     * @param plugin the plugin to register the listener and the task under
+     */
+    public void register(Plugin plugin) {
+        Bukkit.getOnlinePlayers().forEach(this::add);
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+        registerConverters(ConverterRegistry.getDefault());
+
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, this::loadKnownPlayers);
+    }
+
+    /**
+     * Indexes everyone who has played before. A name that's already indexed was put there by a
+     * player joining, which is at least as recent, so it's kept.
+     */
+    private void loadKnownPlayers() {
+        for(OfflinePlayer p : Bukkit.getOfflinePlayers()) {
+            if(p.getName() != null) {
+                known.putIfAbsent(p.getName(), p.getUniqueId());
+            }
+        }
+        knownLoaded = true;
+    }
+
+    /**
+     * Makes r resolve Player and OfflinePlayer arguments through this index.
+     *
+     * @param r
+     */
+    public void registerConverters(ConverterRegistry r) {
+        r.register(Player.class, new PlayerConverter());
+        r.register(OfflinePlayer.class, new OfflinePlayerConverter());
+    }
+
+    /**
+     * Lowest priority, so other plugins' join handlers can already look the player up.
+     */
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent e) {
+        add(e.getPlayer());
+    }
+
+    /**
+     * Monitor priority, so other plugins' quit handlers can still look the player up.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent e) {
+        online.remove(e.getPlayer().getName(), e.getPlayer());
+    }
+
+    private void add(Player p) {
+        online.put(p.getName(), p);
+        known.put(p.getName(), p.getUniqueId());
+    }
+
+    /**
+     *
+     * @param name a player's name, or an abbreviation only one online player's name starts with
+     * @return that player, or null if nobody online matches (or the abbreviation is ambiguous)
+     */
+    public Player getPlayer(String name) {
+        Player exact = online.get(name);
+        if(exact != null) {
+            return exact;
+        }
+
+        Iterator<Player> matches = startingWith(online, name).values().iterator();
+        Player only = matches.hasNext() ? matches.next() : null;
+        return matches.hasNext() ? null : only;
+    }
+
+    /**
+     *
+     * @param name
+     * @return the UUID of the player with that name who's online or has played before, or null
+     * (players who haven't been online since register() are only known once its task finishes)
+     */
+    public UUID getUniqueId(String name) {
+        return known.get(name);
+    }
+
+    /**
+     *
+     * @param prefix
+     * @return the names of online players starting with prefix (ignoring case), sorted
+     */
+    public List<String> getNamesStartingWith(String prefix) {
+        return new ArrayList<>(startingWith(online, prefix).keySet());
+    }
+
+    /**
+     * Every name starting with prefix sorts between prefix itself and prefix followed by the
+     * greatest char.
+     */
+    private static <V> NavigableMap<String, V> startingWith(ConcurrentNavigableMap<String, V> names, String prefix) {
+        return names.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private final class PlayerConverter extends StandardConverters.CheckedConverter<Player> {
+        @Override
+        public Player tryConvert(CharSequence s, int start, int end) {
+            return getPlayer(StandardConverters.substring(s, start, end));
+        }
+
+        @Override
+        public String describeFailure(CharSequence s, int start, int end) {
+            return "no player by that name is online";
+        }
+
+        @Override
+        public List<String> complete(CommandSender sender, String partial) {
+            return getNamesStartingWith(partial);
+        }
+    }
+
+    /**
+     * Accepts a UUID, or the name of a player who's online or has played before. Only online
+     * players are suggested, since there could be far too many offline ones.
+     */
+    private final class OfflinePlayerConverter extends StandardConverters.CheckedConverter<OfflinePlayer> {
+        @Override
+        public OfflinePlayer tryConvert(CharSequence s, int start, int end) {
+            UUID id = StandardConverters.parseUUID(s, start, end);
+            if(id == null) {
+                String typed = StandardConverters.substring(s, start, end);
+                Player p = online.get(typed);
+                if(p != null) {
+                    return p;
+                }
+                id = known.get(typed);
+                if(id == null && !knownLoaded) {
+                    return StandardConverters.findOfflinePlayer(s, start, end);
+                }
+            }
+
+            return id == null ? null : Bukkit.getOfflinePlayer(id);
+        }
+
+        @Override
+        public String describeFailure(CharSequence s, int start, int end) {
+            return "no player by that name has played here";
+        }
+
+        @Override
+        public List<String> complete(CommandSender sender, String partial) {
+            return getNamesStartingWith(partial);
+        }
+    }
+}
@@ -0,0 +1,570 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.convert;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+/**
+ * The converters every ConverterRegistry starts with.
+ *
+ * Integers and UUIDs are parsed straight from the range they're given; the rest are parsed from a
+ * String of it, which is only copied if the range isn't already a whole String. None of them
+ * throw for input they can't convert: each checks its input first, so tryConvert() is as cheap
+ * for a mistyped argument as for a good one.
+ *
+ * @author joshua
+ */
+final class StandardConverters {
+    /**
+     * What checkLong() finds a range to be.
+     */
+    static final int VALID = 0, NOT_A_NUMBER = 1, OUT_OF_RANGE = 2;
+
+    /**
+     * The grammar Duration.parse() accepts. A match can still be refused if it has no parts, or
+     * if a number in it is too big for a long.
+     */
+    private static final Pattern ISO_DURATION = Pattern.compile(
+            "([-+]?)P(?:([-+]?[0-9]+)D)?(T(?:([-+]?[0-9]+)H)?(?:([-+]?[0-9]+)M)?(?:([-+]?[0-9]+)(?:[.,]([0-9]{0,9}))?S)?)?",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern SHORT_DURATION = Pattern.compile("(?:[0-9]+(?:ms|s|m|h|d))+", Pattern.CASE_INSENSITIVE);
+
+    private StandardConverters() {
+    }
+
+    static void registerAll(ConverterRegistry r) {
+        r.register(Integer.class, new IntegerConverter<>(Integer.MIN_VALUE, Integer.MAX_VALUE, v -> (int) v));
+        r.register(Long.class, new IntegerConverter<>(Long.MIN_VALUE, Long.MAX_VALUE, v -> v));
+        r.register(Float.class, new DecimalConverter<>(Float::parseFloat));
+        r.register(Double.class, new DecimalConverter<>(Double::parseDouble));
+        r.register(Boolean.class, new BooleanConverter());
+        r.register(Character.class, checked((s, start, end) -> end - start == 1 ? s.charAt(start) : null, "must be a single character"));
+        r.register(Byte.class, new IntegerConverter<>(Byte.MIN_VALUE, Byte.MAX_VALUE, v -> (byte) v));
+        r.register(Short.class, new IntegerConverter<>(Short.MIN_VALUE, Short.MAX_VALUE, v -> (short) v));
+        r.register(String.class, StandardConverters::substring);
+
+        r.register(UUID.class, checked(StandardConverters::parseUUID, "UUIDs look like 123e4567-e89b-12d3-a456-426614174000"));
+        r.register(Duration.class, new DurationConverter());
+        r.register(Material.class, checked((s, start, end) -> Material.matchMaterial(substring(s, start, end)), "there's no such material"));
+        r.register(World.class, checked((s, start, end) -> Bukkit.getWorld(substring(s, start, end)), "there's no world by that name"));
+        r.register(OfflinePlayer.class, checked(StandardConverters::findOfflinePlayer, "no player by that name has played here"));
+        r.register(Player.class, checked(StandardConverters::findPlayer, "no player by that name is online"));
+    }
+
+    /**
+     *
+     * @param parse returns null for input it can't convert
+     * @param failure why any input parse can't convert fails
+     * @return a converter that only throws from convert()
+     */
+    static <T> ArgumentConverter<T> checked(RangeParser<T> parse, String failure) {
+        return new CheckedConverter<T>() {
+            @Override
+            public T tryConvert(CharSequence s, int start, int end) {
+                return parse.parse(s, start, end);
+            }
+
+            @Override
+            public String describeFailure(CharSequence s, int start, int end) {
+                return failure;
+            }
+        };
+    }
+
+    /**
+     * Checks that a range of s is a decimal integer between min and max, as Long.parseLong would
+     * parse it as a String, without throwing anything.
+     *
+     * @return VALID, NOT_A_NUMBER or OUT_OF_RANGE
+     */
+    static int checkLong(CharSequence s, int start, int end, long min, long max) {
+        int p = start;
+        boolean negative = false;
+        if(p < end && (s.charAt(p) == '-' || s.charAt(p) == '+')) {
+            negative = s.charAt(p) == '-';
+            p++;
+        }
+        if(p == end) {
+            return NOT_A_NUMBER;
+        }
+
+        //accumulate negatively, like Long.parseLong, so Long.MIN_VALUE doesn't overflow
+        long limit = negative ? min : -max, multiplyMin = limit / 10, value = 0;
+        int status = VALID;
+        for(; p < end; p++) {
+            int digit = Character.digit(s.charAt(p), 10);
+            if(digit < 0) {
+                return NOT_A_NUMBER;
+            } else if(status == OUT_OF_RANGE || value < multiplyMin || value * 10 < limit + digit) {
+                //keep going: a later character may still make it not a number at all
+                status = OUT_OF_RANGE;
+            } else {
+                value = value * 10 - digit;
+            }
+        }
+
+        return status;
+    }
+
+    /**
+     * Parses a range of s that checkLong() has found VALID.
+     *
+     * @return the value
+     */
+    static long parseLong(CharSequence s, int start, int end) {
+        int p = start;
+        boolean negative = s.charAt(p) == '-';
+        if(negative || s.charAt(p) == '+') {
+            p++;
+        }
+
+        long value = 0;
+        for(; p < end; p++) {
+            value = value * 10 - Character.digit(s.charAt(p), 10);
+        }
+
+        return negative ? value : -value;
+    }
+
+    /**
+     * Checks a range of s against the decimal (not hexadecimal) forms Double.parseDouble accepts,
+     * e.g. "12", "-.5", "1e3", "2.5f", "NaN" or "-Infinity".
+     */
+    static boolean isDecimal(CharSequence s, int start, int end) {
+        int p = start;
+        if(p < end && (s.charAt(p) == '-' || s.charAt(p) == '+')) {
+            p++;
+        }
+        if(regionEquals(s, p, end, "NaN") || regionEquals(s, p, end, "Infinity")) {
+            return true;
+        }
+
+        int q = skipDigits(s, p, end);
+        int digits = q - p;
+        p = q;
+        if(p < end && s.charAt(p) == '.') {
+            q = skipDigits(s, p + 1, end);
+            digits += q - (p + 1);
+            p = q;
+        }
+        if(digits == 0) {
+            return false;
+        }
+
+        if(p < end && (s.charAt(p) == 'e' || s.charAt(p) == 'E')) {
+            p++;
+            if(p < end && (s.charAt(p) == '-' || s.charAt(p) == '+')) {
+                p++;
+            }
+            q = skipDigits(s, p, end);
+            if(q == p) {
+                return false;
+            }
+            p = q;
+        }
+        if(p < end && "fFdD".indexOf(s.charAt(p)) >= 0) {
+            p++;
+        }
+
+        return p == end;
+    }
+
+    private static int skipDigits(CharSequence s, int p, int end) {
+        while(p < end && s.charAt(p) >= '0' && s.charAt(p) <= '9') {
+            p++;
+        }
+
+        return p;
+    }
+
+    /**
+     * Parses a UUID in its standard form, e.g. "123e4567-e89b-12d3-a456-426614174000".
+     *
+     * @return the UUID, or null if the range isn't one
+     */
+    static UUID parseUUID(CharSequence s, int start, int end) {
+        if(end - start != 36) {
+            return null;
+        }
+
+        long msb = 0, lsb = 0;
+        for(int i = 0; i < 36; i++) {
+            char c = s.charAt(start + i);
+            if(i == 8 || i == 13 || i == 18 || i == 23) {
+                if(c != '-') {
+                    return null;
+                }
+                continue;
+            }
+
+            int digit = Character.digit(c, 16);
+            if(digit < 0) {
+                return null;
+            } else if(i < 18) {
+                msb = msb << 4 | digit;
+            } else {
+                lsb = lsb << 4 | digit;
+            }
+        }
+
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     *
+     * @return the range of s as a String, without copying if it's all of a String
+     */
+    static String substring(CharSequence s, int start, int end) {
+        return s instanceof String && start == 0 && end == s.length() ? (String) s : s.subSequence(start, end).toString();
+    }
+
+    /**
+     *
+     * @param sorted lower-case words, sorted
+     * @return the words that start with partial, ignoring case
+     */
+    private static List<String> startingWith(List<String> sorted, String partial) {
+        String prefix = partial.toLowerCase(Locale.ROOT);
+        return sorted.stream().filter(w -> w.startsWith(prefix)).collect(Collectors.toList());
+    }
+
+    /**
+     * Parses a range of s into a value, or returns null if it can't.
+     */
+    @FunctionalInterface
+    interface RangeParser<T> {
+        T parse(CharSequence s, int start, int end);
+    }
+
+    /**
+     * A converter that checks its input rather than catching exceptions, so only convert() (which
+     * callers expect to throw) ever throws.
+     */
+    abstract static class CheckedConverter<T> implements ArgumentConverter<T> {
+        @Override
+        public T convert(CharSequence s, int start, int end) {
+            T value = tryConvert(s, start, end);
+            if(value == null) {
+                throw new IllegalArgumentException(describeFailure(s, start, end));
+            }
+            return value;
+        }
+
+        @Override
+        public abstract T tryConvert(CharSequence s, int start, int end);
+
+        @Override
+        public abstract String describeFailure(CharSequence s, int start, int end);
+    }
+
+    /**
+     * Converts a decimal integer between min and max, then narrows it to T.
+     */
+    private static final class IntegerConverter<T> extends CheckedConverter<T> {
+        private final long min, max;
+        private final LongFunction<T> narrow;
+
+        IntegerConverter(long min, long max, LongFunction<T> narrow) {
+            this.min = min;
+            this.max = max;
+            this.narrow = narrow;
+        }
+
+        @Override
+        public T tryConvert(CharSequence s, int start, int end) {
+            return checkLong(s, start, end, min, max) == VALID ? narrow.apply(parseLong(s, start, end)) : null;
+        }
+
+        @Override
+        public String describeFailure(CharSequence s, int start, int end) {
+            return checkLong(s, start, end, min, max) == OUT_OF_RANGE ? "must be between " + min + " and " + max : "not a whole number";
+        }
+    }
+
+    /**
+     * Converts anything isDecimal() accepts, which parse is then sure not to throw for.
+     */
+    private static final class DecimalConverter<T> extends CheckedConverter<T> {
+        private final Function<String, T> parse;
+
+        DecimalConverter(Function<String, T> parse) {
+            this.parse = parse;
+        }
+
+        @Override
+        public T tryConvert(CharSequence s, int start, int end) {
+            return isDecimal(s, start, end) ? parse.apply(substring(s, start, end)) : null;
+        }
+
+        @Override
+        public String describeFailure(CharSequence s, int start, int end) {
+            return "not a number";
+        }
+    }
+
+    /**
+     * Only "true" parses to true and only "false" parses to false (ignoring case). All other
+     * inputs fail.
+     */
+    private static final class BooleanConverter extends CheckedConverter<Boolean> {
+        private static final List<String> BOOLEANS = Collections.unmodifiableList(Arrays.asList("false", "true"));
+
+        @Override
+        public Boolean tryConvert(CharSequence s, int start, int end) {
+            if(regionEqualsIgnoreCase(s, start, end, "true")) {
+                return true;
+            } else if(regionEqualsIgnoreCase(s, start, end, "false")) {
+                return false;
+            } else {
+                return null;
+            }
+        }
+
+        @Override
+        public String describeFailure(CharSequence s, int start, int end) {
+            return "must be \"true\" or \"false\"";
+        }
+
+        @Override
+        public List<String> complete(CommandSender sender, String partial) {
+            return startingWith(BOOLEANS, partial);
+        }
+    }
+
+    private static boolean regionEquals(CharSequence s, int start, int end, String word) {
+        if(end - start != word.length()) {
+            return false;
+        }
+        for(int i = 0; i < word.length(); i++) {
+            if(s.charAt(start + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static boolean regionEqualsIgnoreCase(CharSequence s, int start, int end, String word) {
+        if(end - start != word.length()) {
+            return false;
+        }
+        for(int i = 0; i < word.length(); i++) {
+            char a = s.charAt(start + i), b = word.charAt(i);
+            if(a != b && Character.toUpperCase(a) != Character.toUpperCase(b) && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Converts either an ISO-8601 duration ("PT1H30M") or a shorter one made of amounts and units,
+     * e.g. "1h30m", "90s", "2d" or "250ms".
+     */
+    private static final class DurationConverter extends CheckedConverter<Duration> {
+        @Override
+        public Duration tryConvert(CharSequence s, int start, int end) {
+            if(isISO(s, start, end)) {
+                Matcher m = ISO_DURATION.matcher(s).region(start, end);
+                //Duration.parse() refuses "P" and "PT" (and "P1DT") even though they match
+                if(!m.matches() || m.end(3) - m.start(3) == 1 || (m.start(2) < 0 && m.start(4) < 0 && m.start(5) < 0 && m.start(6) < 0)) {
+                    return null;
+                }
+
+                try {
+                    return Duration.parse(substring(s, start, end));
+                } catch(DateTimeParseException ex) {
+                    //only reachable with a number too big for a long
+                    return null;
+                }
+            }
+
+            if(start == end) {
+                return null;
+            }
+
+            Duration total = Duration.ZERO;
+            int p = start;
+            while(p < end) {
+                int amountStart = p;
+                p = skipDigits(s, p, end);
+                int unitStart = p;
+                while(p < end && Character.isLetter(s.charAt(p))) {
+                    p++;
+                }
+
+                ChronoUnit unit = durationUnit(s, unitStart, p);
+                if(amountStart == unitStart || unit == null || checkLong(s, amountStart, unitStart, 0, Long.MAX_VALUE) != VALID) {
+                    return null;
+                }
+
+                try {
+                    total = total.plus(parseLong(s, amountStart, unitStart), unit);
+                } catch(ArithmeticException ex) {
+                    //only reachable with a duration of hundreds of billions of years
+                    return null;
+                }
+            }
+
+            return total;
+        }
+
+        @Override
+        public String describeFailure(CharSequence s, int start, int end) {
+            if(isISO(s, start, end)) {
+                return "not a valid ISO-8601 duration";
+            } else if(SHORT_DURATION.matcher(s).region(start, end).matches()) {
+                return "that duration is too long";
+            } else {
+                return "durations look like 1h30m, 90s or 250ms";
+            }
+        }
+
+        private static boolean isISO(CharSequence s, int start, int end) {
+            return start < end && (s.charAt(start) == 'P' || s.charAt(start) == 'p');
+        }
+    }
+
+    private static ChronoUnit durationUnit(CharSequence s, int start, int end) {
+        if(regionEqualsIgnoreCase(s, start, end, "ms")) {
+            return ChronoUnit.MILLIS;
+        } else if(regionEqualsIgnoreCase(s, start, end, "s")) {
+            return ChronoUnit.SECONDS;
+        } else if(regionEqualsIgnoreCase(s, start, end, "m")) {
+            return ChronoUnit.MINUTES;
+        } else if(regionEqualsIgnoreCase(s, start, end, "h")) {
+            return ChronoUnit.HOURS;
+        } else if(regionEqualsIgnoreCase(s, start, end, "d")) {
+            return ChronoUnit.DAYS;
+        }
+
+        return null;
+    }
+
+    /**
+     * Accepts a UUID, or the name of a player who's online or has played before. Looking up a
+     * player who's offline by name means searching every player the server knows of, unless a
+     * PlayerIndex has been registered.
+     *
+     * @return the player, or null if there's no such player
+     */
+    @SuppressWarnings("deprecation")
+    static OfflinePlayer findOfflinePlayer(CharSequence s, int start, int end) {
+        UUID id = parseUUID(s, start, end);
+        if(id != null) {
+            return Bukkit.getOfflinePlayer(id);
+        }
+
+        String typed = substring(s, start, end);
+        OfflinePlayer online = Bukkit.getPlayerExact(typed);
+        if(online != null) {
+            return online;
+        }
+
+        for(OfflinePlayer p : Bukkit.getOfflinePlayers()) {
+            if(typed.equalsIgnoreCase(p.getName())) {
+                return p;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Accepts the name of a player who's online, or an abbreviation only one online player's name
+     * starts with (ignoring case), just as a PlayerIndex does, but by scanning every online player.
+     *
+     * @return the player, or null if nobody online matches (or the abbreviation is ambiguous)
+     */
+    static Player findPlayer(CharSequence s, int start, int end) {
+        String typed = substring(s, start, end);
+        Player exact = Bukkit.getPlayerExact(typed);
+        if(exact != null) {
+            return exact;
+        }
+
+        Player only = null;
+        for(Player p : Bukkit.getOnlinePlayers()) {
+            if(p.getName().regionMatches(true, 0, typed, 0, typed.length())) {
+                if(only != null) {
+                    return null;
+                }
+                only = p;
+            }
+        }
+
+        return only;
+    }
+
+    /**
+     * Matches an enum's constants by name, ignoring case, and completes them in lower case.
+     */
+    static final class EnumConverter<E extends Enum<E>> extends CheckedConverter<E> {
+        private final E[] constants;
+        private final List<String> names;
+
+        EnumConverter(Class<E> type) {
+            this.constants = type.getEnumConstants();
+            this.names = Collections.unmodifiableList(Stream.of(constants)
+                    .map(e -> e.name().toLowerCase(Locale.ROOT))
+                    .sorted()
+                    .collect(Collectors.toList()));
+        }
+
+        @Override
+        public List<String> complete(CommandSender sender, String partial) {
+            return startingWith(names, partial);
+        }
+
+        @Override
+        public E tryConvert(CharSequence s, int start, int end) {
+            for(E e : constants) {
+                if(regionEqualsIgnoreCase(s, start, end, e.name())) {
+                    return e;
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        public String describeFailure(CharSequence s, int start, int end) {
+            return "must be one of " + names;
+        }
+    }
+}
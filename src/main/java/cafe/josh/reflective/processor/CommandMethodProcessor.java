@@ -16,68 +16,324 @@
  */
 package cafe.josh.reflective.processor;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import cafe.josh.reflective.CommandDispatcher;
+import cafe.josh.reflective.annotation.CommandMethod;
+import cafe.josh.reflective.annotation.DefaultValue;
+import cafe.josh.reflective.convert.ArgumentConverter;
 
 /**
+ * Checks CommandMethod signatures at compile time, and generates a CommandDispatcher for each
+ * CommandDefinition so TreeCommandExecutor doesn't need reflection to call it.
  *
  * @author joshua
  */
-@SupportedAnnotationTypes("CommandMethod")
+@SupportedAnnotationTypes("cafe.josh.reflective.annotation.CommandMethod")
 public class CommandMethodProcessor extends AbstractProcessor {
     private static final String ERR_MSG_VISIBILITY = "CommandMethod-annotated methods must be public.";
+    private static final String ANNOTATION_PACKAGE = CommandMethod.class.getPackage().getName() + ".";
+    private static final String CONVERTER_SERVICE = "META-INF/services/" + ArgumentConverter.class.getName();
+    private static final Pattern ARGUMENT_SEGMENT = Pattern.compile("<([^<>:|]+):([^<>:|]+)>");
+
+    /**
+     * The types ConverterRegistry starts out with converters for (enums are handled separately).
+     */
+    private static final Set<String> STANDARD_CONVERTIBLE_TYPES = new HashSet<>(Arrays.asList(
+            "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double", "java.lang.Boolean",
+            "java.lang.Character", "java.lang.Byte", "java.lang.Short", "java.lang.String",
+            "java.util.UUID", "java.time.Duration", "org.bukkit.Material", "org.bukkit.World", "org.bukkit.OfflinePlayer",
+            "org.bukkit.entity.Player"));
+
+    private final Set<String> generated = new HashSet<>();
+    private Set<String> serviceConvertibleTypes;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
 
     @Override
     public boolean process(Set<? extends TypeElement> set, RoundEnvironment re) {
+        Set<TypeElement> definitions = new LinkedHashSet<>();
+        Set<TypeElement> malformed = new HashSet<>();
+
         set.stream().forEach(annotation -> {
             re.getElementsAnnotatedWith(annotation)
                     .stream()
                     .filter(e -> e instanceof ExecutableElement)
                     .map(e -> (ExecutableElement) e)
                     .forEach(executable -> {
+                        TypeElement owner = (TypeElement) executable.getEnclosingElement();
+                        definitions.add(owner);
+
                         if(!executable.getModifiers().contains(Modifier.PUBLIC)) {
                             processingEnv.getMessager().printMessage(Kind.ERROR, ERR_MSG_VISIBILITY, executable);
+                            malformed.add(owner);
                         }
 
-                        //List<String> params = executable.getParameters().stream().map(p -> p.asType().toString()).collect(Collectors.toList());
-                        checkWellFormedParamList(executable);
+                        if(!checkWellFormedParamList(executable)) {
+                            malformed.add(owner);
+                        }
                     });
         });
 
+        definitions.stream()
+                .filter(d -> !malformed.contains(d))
+                .filter(this::canGenerateDispatcherFor)
+                .forEach(this::generateDispatcher);
+
         return true;
     }
 
-    private void checkWellFormedParamList(ExecutableElement e) {
+    /**
+     *
+     * @param e
+     * @return true if e's parameters can all be bound by CommandLeaf
+     */
+    private boolean checkWellFormedParamList(ExecutableElement e) {
         List<? extends VariableElement> params = e.getParameters();
+        boolean wellFormed = true;
+
+        //the path's arguments and the required arguments after them are always given
+        CommandMethod info = e.getAnnotation(CommandMethod.class);
+        int alwaysGiven = info.requiredArgs() + (int) Stream.of(info.path().split(" ")).filter(seg -> ARGUMENT_SEGMENT.matcher(seg).matches()).count();
 
-        int i = 0;
+        int i = 0, converted = 0;
         for(VariableElement v : params) {
-            if(isType(v, "org.bukkit.command.CommandSender") || isType(v, "org.bukkit.entity.Player") || isType(v, "org.bukkit.command.ConsoleCommandSender")) {
+            //a Player anywhere but first is an argument, converted from a name
+            if(isType(v, "org.bukkit.command.CommandSender") || isType(v, "org.bukkit.command.ConsoleCommandSender") || (i == 0 && isType(v, "org.bukkit.entity.Player"))) {
                 if(i != 0) {
                     compileError(v, "CommandSender variable must be first in parameter list.");
+                    wellFormed = false;
                 }
             } else if(isType(v, getArrayMirrorForName("java.lang.String"))) {
                 if(i != (params.size() - 1)) {
                     compileError(v, "String[] must be the last parameter.");
+                    wellFormed = false;
                 }
             } else {
-                if(!isAllowedPrimitiveType(v.asType())) {
-                    compileError(v, "Cannot automatically convert to type \"" + v.asType().toString() + "\"");
+                if(!isConvertible(v.asType())) {
+                    compileError(v, "Cannot automatically convert to type \"" + v.asType().toString() + "\" (list an ArgumentConverter for it in " + CONVERTER_SERVICE + ")");
+                    wellFormed = false;
+                } else if(v.asType().getKind().isPrimitive() && converted >= alwaysGiven && v.getAnnotation(DefaultValue.class) == null) {
+                    compileError(v, "Optional primitive parameters need a @DefaultValue.");
+                    wellFormed = false;
                 }
+                converted++;
             }
 
             i++;
         }
+
+        return wellFormed;
+    }
+
+    /**
+     * A dispatcher can only be generated for concrete CommandDefinitions whose name can be written
+     * from their own package. Anything else silently falls back to reflection at runtime.
+     *
+     * @param type
+     * @return
+     */
+    private boolean canGenerateDispatcherFor(TypeElement type) {
+        if(type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+
+        if(!processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(type.asType()), getMirrorForName("cafe.josh.reflective.CommandDefinition"))) {
+            return false;
+        }
+
+        for(Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            NestingKind nesting = ((TypeElement) e).getNestingKind();
+            if(nesting == NestingKind.LOCAL || nesting == NestingKind.ANONYMOUS || e.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+        }
+
+        return getCommandMethods(type).stream().allMatch(m -> m.getModifiers().contains(Modifier.PUBLIC));
+    }
+
+    /**
+     *
+     * @param type
+     * @return every CommandMethod type has, including inherited ones (i.e. what
+     * Class::getMethods() would find at runtime)
+     */
+    private List<ExecutableElement> getCommandMethods(TypeElement type) {
+        return processingEnv.getElementUtils().getAllMembers(type).stream()
+                .filter(e -> e.getKind() == ElementKind.METHOD)
+                .filter(e -> e.getAnnotation(CommandMethod.class) != null)
+                .map(e -> (ExecutableElement) e)
+                .collect(Collectors.toList());
+    }
+
+    private void generateDispatcher(TypeElement type) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleName = (pkg.isUnnamed() ? binaryName : binaryName.substring(pkg.getQualifiedName().length() + 1)) + CommandDispatcher.CLASS_SUFFIX;
+        String qualifiedName = pkg.isUnnamed() ? simpleName : pkg.getQualifiedName() + "." + simpleName;
+
+        if(!generated.add(qualifiedName)) {
+            return;
+        }
+
+        String definitionType = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+        List<ExecutableElement> methods = getCommandMethods(type);
+
+        StringBuilder src = new StringBuilder();
+        if(!pkg.isUnnamed()) {
+            src.append("package ").append(pkg.getQualifiedName()).append(";\n\n");
+        }
+        src.append("/**\n * Generated by ").append(getClass().getName()).append(" from ").append(definitionType).append(". Do not edit.\n */\n");
+        src.append("public final class ").append(simpleName).append(" implements cafe.josh.reflective.CommandDispatcher<").append(definitionType).append("> {\n");
+        src.append("    @Override\n");
+        src.append("    public java.util.List<cafe.josh.reflective.CommandLeaf> getLeaves(final ").append(definitionType).append(" d) {\n");
+        src.append("        java.util.List<cafe.josh.reflective.CommandLeaf> leaves = new java.util.ArrayList<>(").append(methods.size()).append(");\n");
+        for(ExecutableElement m : methods) {
+            appendLeaf(src, definitionType, m);
+        }
+        src.append("        return leaves;\n");
+        src.append("    }\n");
+        src.append("}\n");
+
+        try(Writer w = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            w.write(src.toString());
+        } catch(IOException ex) {
+            compileError(type, "Couldn't generate " + qualifiedName + ": " + ex.getLocalizedMessage());
+        }
+    }
+
+    private void appendLeaf(StringBuilder src, String definitionType, ExecutableElement m) {
+        List<? extends VariableElement> params = m.getParameters();
+        List<String> types = params.stream()
+                .map(p -> processingEnv.getTypeUtils().erasure(p.asType()).toString())
+                .collect(Collectors.toList());
+
+        src.append("        leaves.add(new cafe.josh.reflective.CommandLeaf(\n");
+        appendCommandMethod(src, m);
+        src.append("                ").append(literal(definitionType + "::" + m.getSimpleName())).append(",\n");
+        src.append("                new Class<?>[]{")
+                .append(types.stream().map(t -> t + ".class").collect(Collectors.joining(", ")))
+                .append("},\n");
+        src.append("                new String[]{")
+                .append(params.stream().map(p -> literal(p.getSimpleName().toString())).collect(Collectors.joining(", ")))
+                .append("},\n");
+        appendParameterAnnotations(src, params);
+        src.append("                d,\n");
+
+        String receiver = m.getModifiers().contains(Modifier.STATIC) ? definitionType : "d";
+        src.append("                args -> ").append(receiver).append(".").append(m.getSimpleName()).append("(");
+        for(int i = 0; i < types.size(); i++) {
+            src.append(i == 0 ? "" : ", ").append("(").append(types.get(i)).append(") args[").append(i).append("]");
+        }
+        src.append(")));\n");
+    }
+
+    /**
+     * Writes an anonymous implementation of CommandMethod that returns the same values as m's
+     * annotation, defaults included.
+     */
+    private void appendCommandMethod(StringBuilder src, ExecutableElement m) {
+        AnnotationMirror mirror = m.getAnnotationMirrors().stream()
+                .filter(a -> isType(a.getAnnotationType(), CommandMethod.class.getName()))
+                .findFirst()
+                .get();
+
+        src.append("                ");
+        appendAnnotation(src, mirror, "                ");
+        src.append(",\n");
+    }
+
+    /**
+     * Writes a new Annotation[][] holding each parameter's annotations from this library (e.g.
+     * CompleteWith), since CommandLeaf reads parameter options from them.
+     */
+    private void appendParameterAnnotations(StringBuilder src, List<? extends VariableElement> params) {
+        src.append("                new java.lang.annotation.Annotation[][]{");
+        for(int i = 0; i < params.size(); i++) {
+            src.append(i == 0 ? "" : ", ").append("{");
+            List<AnnotationMirror> mirrors = params.get(i).getAnnotationMirrors().stream()
+                    .filter(a -> a.getAnnotationType().toString().startsWith(ANNOTATION_PACKAGE))
+                    .collect(Collectors.toList());
+            for(int j = 0; j < mirrors.size(); j++) {
+                src.append(j == 0 ? "\n                    " : ",\n                    ");
+                appendAnnotation(src, mirrors.get(j), "                    ");
+            }
+            src.append("}");
+        }
+        src.append("},\n");
+    }
+
+    /**
+     * Writes an anonymous implementation of mirror's annotation type that returns the same values as
+     * mirror, defaults included.
+     */
+    private void appendAnnotation(StringBuilder src, AnnotationMirror mirror, String indent) {
+        String annotationType = mirror.getAnnotationType().toString();
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values = new LinkedHashMap<>(processingEnv.getElementUtils().getElementValuesWithDefaults(mirror));
+
+        src.append("new ").append(annotationType).append("() {\n");
+        src.append(indent).append("    @Override\n");
+        src.append(indent).append("    public Class<? extends java.lang.annotation.Annotation> annotationType() {\n");
+        src.append(indent).append("        return ").append(annotationType).append(".class;\n");
+        src.append(indent).append("    }\n");
+        values.forEach((member, value) -> {
+            String type = member.getReturnType().toString();
+            src.append("\n");
+            src.append(indent).append("    @Override\n");
+            src.append(indent).append("    public ").append(type).append(" ").append(member.getSimpleName()).append("() {\n");
+            src.append(indent).append("        return ").append(literal(type, value.getValue())).append(";\n");
+            src.append(indent).append("    }\n");
+        });
+        src.append(indent).append("}");
+    }
+
+    private String literal(String type, Object value) {
+        if(value instanceof List) {
+            String elements = ((List<?>) value).stream()
+                    .map(v -> literal(type.substring(0, type.length() - 2), ((AnnotationValue) v).getValue()))
+                    .collect(Collectors.joining(", "));
+            return "new " + type + "{" + elements + "}";
+        }
+
+        return literal(value);
+    }
+
+    private String literal(Object value) {
+        return processingEnv.getElementUtils().getConstantExpression(value);
     }
 
     /**
@@ -118,15 +374,84 @@ public class CommandMethodProcessor extends AbstractProcessor {
         processingEnv.getMessager().printMessage(Kind.ERROR, msg, e);
     }
 
-    private boolean isAllowedPrimitiveType(TypeMirror k) {
-        return isType(k, "java.lang.Integer")
-               || isType(k, "java.lang.Long")
-               || isType(k, "java.lang.Float")
-               || isType(k, "java.lang.Double")
-               || isType(k, "java.lang.Boolean")
-               || isType(k, "java.lang.Character")
-               || isType(k, "java.lang.Byte")
-               || isType(k, "java.lang.Short")
-               || isType(k, "java.lang.String");
+    /**
+     * Checks a parameter's type against the same converters ConverterRegistry.getDefault() will
+     * have at runtime: the standard ones (primitives included), any enum, and those listed in the
+     * converter service file.
+     */
+    private boolean isConvertible(TypeMirror k) {
+        if(k.getKind().isPrimitive()) {
+            return true;
+        }
+
+        String name = processingEnv.getTypeUtils().erasure(k).toString();
+        Element e = processingEnv.getTypeUtils().asElement(k);
+        return STANDARD_CONVERTIBLE_TYPES.contains(name)
+               || (e != null && e.getKind() == ElementKind.ENUM)
+               || getServiceConvertibleTypes().contains(name);
+    }
+
+    /**
+     * Reads the converter service file (from the compiler's output, where resources are copied
+     * before compiling, or else from the classpath) the first time it's needed.
+     *
+     * @return the qualified names of the types the listed converters convert to
+     */
+    private Set<String> getServiceConvertibleTypes() {
+        if(serviceConvertibleTypes != null) {
+            return serviceConvertibleTypes;
+        }
+
+        serviceConvertibleTypes = new HashSet<>();
+        for(StandardLocation location : new StandardLocation[]{StandardLocation.CLASS_OUTPUT, StandardLocation.CLASS_PATH}) {
+            List<String> names;
+            try {
+                FileObject f = processingEnv.getFiler().getResource(location, "", CONVERTER_SERVICE);
+                try(BufferedReader r = new BufferedReader(f.openReader(true))) {
+                    names = r.lines()
+                            .map(line -> line.replaceFirst("#.*", "").trim())
+                            .filter(line -> !line.isEmpty())
+                            .collect(Collectors.toList());
+                }
+            } catch(IOException | IllegalArgumentException ex) {
+                continue;
+            }
+
+            for(String name : names) {
+                TypeElement converter = processingEnv.getElementUtils().getTypeElement(name);
+                String type = converter == null ? null : getConvertedType(converter);
+                if(type == null) {
+                    processingEnv.getMessager().printMessage(Kind.WARNING, "Can't tell what " + name + " (listed in " + CONVERTER_SERVICE + ") converts to");
+                } else {
+                    serviceConvertibleTypes.add(type);
+                }
+            }
+            break;
+        }
+
+        return serviceConvertibleTypes;
+    }
+
+    /**
+     * Reads T from a class's (or a superclass's) "implements ArgumentConverter&lt;T&gt;", the same
+     * way ConverterRegistry does at runtime.
+     *
+     * @return T's qualified name, or null if it isn't given as a class
+     */
+    private String getConvertedType(TypeElement converter) {
+        for(TypeElement k = converter; k != null; ) {
+            for(TypeMirror i : k.getInterfaces()) {
+                DeclaredType d = (DeclaredType) i;
+                if(((TypeElement) d.asElement()).getQualifiedName().contentEquals(ArgumentConverter.class.getName())) {
+                    List<? extends TypeMirror> args = d.getTypeArguments();
+                    return args.size() == 1 && args.get(0).getKind() == TypeKind.DECLARED ? processingEnv.getTypeUtils().erasure(args.get(0)).toString() : null;
+                }
+            }
+
+            TypeMirror superclass = k.getSuperclass();
+            k = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) processingEnv.getTypeUtils().asElement(superclass) : null;
+        }
+
+        return null;
     }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import cafe.josh.reflective.CommandInterceptor;
+import cafe.josh.reflective.CommandLeaf;
+import cafe.josh.reflective.CommandMetrics;
+import cafe.josh.reflective.TreeCommandExecutor;
+import cafe.josh.reflective.audit.AuditLog;
+import org.bukkit.command.CommandSender;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author joshua
+ */
+public class AuditLogTest {
+
+    @Test
+    public void testRecordsOutcomes() throws IOException {
+        Path dir = Files.createTempDirectory("reflective-audit");
+        TreeCommandExecutor e = new TreeCommandExecutor();
+        e.add(new SampleCommandDefinition());
+
+        AuditLog log = new AuditLog(dir, "audit", AuditLog.OverflowPolicy.BLOCK);
+        e.setAuditLog(log);
+        e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"hi"});
+        e.onCommand(new MockCommandSender(), new MockCommand("echo"), "echo", new String[0]);
+        e.onCommand(new MockCommandSender(), new MockCommand("echo"), "echo", new String[]{"tab\there"});
+        log.close();
+
+        assertEquals(3, log.getWrittenCount());
+        assertEquals(0, log.getDroppedCount());
+        List<String> lines = Files.readAllLines(dir.resolve("audit-0.log"), StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+
+        String[] first = lines.get(0).split("\t");
+        assertEquals("MockCommandSender:mock sender", first[1]);
+        assertEquals("EXECUTED", first[2]);
+        assertEquals("/say hi", first[3]);
+        assertEquals("MISSING_ARGS", lines.get(1).split("\t")[2]);
+        assertEquals("/echo tab\\there", lines.get(2).split("\t")[3]);
+
+        assertFalse(log.record(new MockCommandSender(), e.getLeaves().iterator().next(), new String[0], null, 0));
+        assertEquals(1, log.getDroppedCount());
+    }
+
+    @Test
+    public void testRollsOver() throws IOException {
+        Path dir = Files.createTempDirectory("reflective-audit");
+        TreeCommandExecutor e = new TreeCommandExecutor();
+        e.add(new SampleCommandDefinition());
+
+        try(AuditLog log = new AuditLog(dir, "audit", 16, 1, AuditLog.OverflowPolicy.BLOCK, leaf -> leaf.getStringNodes().get(0).equals("say"))) {
+            e.setAuditLog(log);
+            e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"hi"});
+            e.onCommand(new MockCommandSender(), new MockCommand("sayone"), "sayone", new String[0]);
+            e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"bye"});
+        }
+
+        assertEquals(1, Files.readAllLines(dir.resolve("audit-0.log")).size());
+        assertEquals(1, Files.readAllLines(dir.resolve("audit-1.log")).size());
+    }
+
+    @Test
+    public void testFailedRollOverKeepsWriting() throws IOException {
+        Path dir = Files.createTempDirectory("reflective-audit");
+        TreeCommandExecutor e = new TreeCommandExecutor();
+        e.add(new SampleCommandDefinition());
+
+        try(AuditLog log = new AuditLog(dir, "audit", 16, 1, AuditLog.OverflowPolicy.BLOCK, leaf -> true)) {
+            //the next file can't be opened, since its name is taken by a directory
+            Files.createDirectory(dir.resolve("audit-1.log"));
+            e.setAuditLog(log);
+            e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"hi"});
+            e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"bye"});
+            e.onCommand(new MockCommandSender(), new MockCommand("sayone"), "sayone", new String[0]);
+            log.close();
+
+            assertEquals(3, log.getWrittenCount());
+            assertEquals(0, log.getDroppedCount());
+        }
+
+        assertEquals(3, Files.readAllLines(dir.resolve("audit-0.log")).size());
+    }
+
+    @Test
+    public void testInterceptedOutcome() throws IOException {
+        Path dir = Files.createTempDirectory("reflective-audit");
+        TreeCommandExecutor e = new TreeCommandExecutor();
+        SampleCommandDefinition d = new SampleCommandDefinition();
+        e.add(d);
+        e.enableMetrics();
+        e.addInterceptor(new CommandInterceptor() {
+            @Override
+            public boolean preExecute(CommandSender sender, CommandLeaf leaf, Object[] args) {
+                return false;
+            }
+        });
+
+        try(AuditLog log = new AuditLog(dir, "audit", AuditLog.OverflowPolicy.BLOCK)) {
+            e.setAuditLog(log);
+            e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"hi"});
+        }
+
+        assertNull(d.getRan());
+        CommandMetrics.Snapshot sayHi = e.getMetrics().get("say hi");
+        assertEquals(1, sayHi.getFailures(CommandMetrics.Failure.INTERCEPTED));
+        assertEquals(0, sayHi.getLatencyCount());
+        assertEquals("INTERCEPTED", Files.readAllLines(dir.resolve("audit-0.log")).get(0).split("\t")[2]);
+    }
+}
@@ -16,10 +16,25 @@
  */
 package cafe.josh.reflective.test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import cafe.josh.reflective.CommandDefinition;
+import cafe.josh.reflective.CommandDispatcher;
+import cafe.josh.reflective.CommandInterceptor;
+import cafe.josh.reflective.CommandLine;
+import cafe.josh.reflective.CommandLeaf;
+import cafe.josh.reflective.CommandMetrics;
+import cafe.josh.reflective.CompletionCache;
+import cafe.josh.reflective.TickBudgetWatchdog;
 import cafe.josh.reflective.TreeCommandExecutor;
 import cafe.josh.reflective.TreeTabCompleter;
+import cafe.josh.reflective.annotation.CommandMethod;
+import cafe.josh.reflective.test.invalid.SampleInvalidCommandDefinition;
+import org.bukkit.command.CommandSender;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -86,11 +101,28 @@ public class CommandDefinitionTest {
         assertEquals(d.getArgsPassed(), 3);
     }
 
+    @Test
+    public void testGeneratedDispatcher() {
+        DispatcherProbe probe = new DispatcherProbe();
+        e.add(probe);
+        e.onCommand(new MockCommandSender(), new MockCommand("probe"), "probe", new String[0]);
+        assertEquals(DispatcherProbe.class.getName() + CommandDispatcher.CLASS_SUFFIX, probe.getCaller());
+    }
+
+    @Test
+    public void testBoundInvoker() {
+        //dispatchers are looked up by exact class, so a subclass gets its parent's commands by reflection
+        ReflectedProbe probe = new ReflectedProbe();
+        e.add(probe);
+        e.onCommand(new MockCommandSender(), new MockCommand("probe"), "probe", new String[0]);
+        assertTrue(probe.getCaller(), probe.getCaller().startsWith("cafe.josh.reflective.LambdaInvokers"));
+    }
+
     @Test
     public void testInvalidParams() {
         boolean exceptionThrown = false;
-        e.add(new SampleInvalidCommandDefinition());
         try {
+            e.add(new SampleInvalidCommandDefinition());
             e.onCommand(new MockCommandSender(), new MockCommand("invalid"), "invalid", new String[]{"1"});
         } catch(RuntimeException ex) {
             System.out.println("testInvalidParams() correctly threw an exception!");
@@ -100,6 +132,351 @@ public class CommandDefinitionTest {
         assertTrue(exceptionThrown);
     }
 
+    @Test
+    public void testDuplicateDefinitionRejected() {
+        boolean exceptionThrown = false;
+        int leaves = e.getLeaves().size();
+        try {
+            e.add(new SampleCommandDefinition());
+        } catch(RuntimeException ex) {
+            exceptionThrown = true;
+        }
+
+        assertTrue(exceptionThrown);
+        assertEquals(leaves, e.getLeaves().size());
+
+        e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"hi"});
+        assertEquals(d.getRan(), "sayhi");
+    }
+
+    @Test
+    public void testTabCompletionSortedPrefixRange() {
+        TreeTabCompleter l = new TreeTabCompleter(e);
+
+        assertEquals(Arrays.asList("bye", "hi"), l.onTabComplete(null, new MockCommand("say"), null, new String[]{""}));
+        assertEquals(Arrays.asList("command"), l.onTabComplete(null, new MockCommand("prefixed"), null, new String[]{"c"}));
+        assertTrue(l.onTabComplete(null, new MockCommand("say"), null, new String[]{"x"}).isEmpty());
+        assertTrue(l.onTabComplete(null, new MockCommand("say"), null, new String[]{"hix"}).isEmpty());
+    }
+
+    @Test
+    public void testCompletionCache() {
+        e.enableCompletionCache(16);
+        CompletionCache c = e.getCompletionCache();
+
+        List<String> first = e.getTabCompletions("say", new String[]{"h"});
+        assertSame(first, e.getTabCompletions("say", new String[]{"h"}));
+        assertEquals(1, c.getMissCount());
+        assertEquals(1, c.getHitCount());
+
+        e.remove(d);
+        assertEquals(0, c.size());
+        assertTrue(e.getTabCompletions("say", new String[]{"h"}).isEmpty());
+    }
+
+    @Test
+    public void testDidYouMean() {
+        MockCommandSender s = new MockCommandSender();
+        e.onCommand(s, new MockCommand("this"), "this", new String[]{"one", "is", "realy", "pretty", "long"});
+        assertNull(d.getRan());
+        assertTrue(s.getMessages().get(0).contains("Invalid command"));
+        assertEquals(2, s.getMessages().size());
+        assertTrue(s.getMessages().get(1).contains("/this one is really"));
+    }
+
+    @Test
+    public void testHelpMessages() {
+        MockCommandSender s = new MockCommandSender();
+        e.onCommand(s, new MockCommand("say"), "say", new String[0]);
+        assertEquals(4, s.getMessages().size());
+        assertTrue(s.getMessages().get(0).contains("Incomplete command: \"/say\""));
+        assertTrue(s.getMessages().get(2).endsWith("bye"));
+        assertTrue(s.getMessages().get(3).endsWith("hi"));
+
+        s.getMessages().clear();
+        e.onCommand(s, new MockCommand("long"), "long", new String[]{"command", "path"});
+        assertEquals(1, s.getMessages().size());
+        assertTrue(s.getMessages().get(0).startsWith("Usage: /long command path <"));
+        assertTrue(s.getMessages().get(0).endsWith(":String[]>"));
+    }
+
+    @Test
+    public void testHelpIndex() {
+        e.enableHelp(1);
+
+        MockCommandSender s = new MockCommandSender();
+        e.onCommand(s, new MockCommand("say"), "say", new String[]{"help"});
+        assertEquals(3, s.getMessages().size());
+        assertTrue(s.getMessages().get(0).contains("(page 1 of 2)"));
+        assertTrue(s.getMessages().get(1).contains("/say bye"));
+        assertTrue(s.getMessages().get(2).contains("/say help 2"));
+
+        s.getMessages().clear();
+        e.onCommand(s, new MockCommand("say"), "say", new String[]{"help", "2"});
+        assertEquals(2, s.getMessages().size());
+        assertTrue(s.getMessages().get(1).contains("/say hi"));
+
+        s.getMessages().clear();
+        e.onCommand(s, new MockCommand("say"), "say", new String[]{"help", "h"});
+        assertEquals(2, s.getMessages().size());
+        assertTrue(s.getMessages().get(0).contains("(page 1 of 1)"));
+        assertTrue(s.getMessages().get(1).contains("/say hi"));
+
+        //too many completions to list, so it's the first page of help instead
+        s.getMessages().clear();
+        e.onCommand(s, new MockCommand("say"), "say", new String[0]);
+        assertTrue(s.getMessages().get(0).contains("Help for"));
+
+        e.onCommand(s, new MockCommand("echo"), "echo", new String[]{"help"});
+        assertEquals("echo", d.getRan());
+    }
+
+    @Test
+    public void testCaseInsensitive() {
+        e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"HI"});
+        assertNull(d.getRan());
+
+        TreeCommandExecutor ci = new TreeCommandExecutor(true);
+        ci.add(d);
+        ci.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"HI"});
+        assertEquals("sayhi", d.getRan());
+        ci.onCommand(new MockCommandSender(), new MockCommand("this"), "this", new String[]{"One", "IS", "really", "Pretty", "LONG"});
+        assertEquals("longcmd", d.getRan());
+
+        assertEquals(Arrays.asList("hi"), ci.getTabCompletions("say", new String[]{"H"}));
+        assertEquals(Arrays.asList("command"), ci.getTabCompletions("prefixed", new String[]{"COM"}));
+    }
+
+    @Test
+    public void testAliases() {
+        e.onCommand(new MockCommandSender(), new MockCommand("w"), "w", new String[]{"set"});
+        assertEquals("warpset", d.getRan());
+        e.onCommand(new MockCommandSender(), new MockCommand("tp2warp"), "tp2warp", new String[]{"ls"});
+        assertEquals("warplist", d.getRan());
+        e.onCommand(new MockCommandSender(), new MockCommand("warp"), "warp", new String[]{"set"});
+        assertEquals("warpset", d.getRan());
+
+        assertEquals(Arrays.asList("list", "ls", "set"), e.getTabCompletions("w", new String[0]));
+        assertEquals(Arrays.asList("list", "ls"), e.getTabCompletions("warp", new String[]{"l"}));
+
+        assertTrue(e.remove(d));
+        assertTrue(e.getTabCompletions("w", new String[0]).isEmpty());
+    }
+
+    @Test
+    public void testPathArguments() {
+        e.onCommand(new MockCommandSender(), new MockCommand("home"), "home", new String[]{"3"});
+        assertEquals("homeslot 3", d.getRan());
+        e.onCommand(new MockCommandSender(), new MockCommand("home"), "home", new String[]{"base"});
+        assertEquals("homenamed base", d.getRan());
+        e.onCommand(new MockCommandSender(), new MockCommand("home"), "home", new String[]{"base", "move", "10", "-4"});
+        assertEquals("homemove base 10 -4", d.getRan());
+
+        //"move" is a literal after an argument, so "x" isn't a valid next token
+        MockCommandSender s = new MockCommandSender();
+        e.onCommand(s, new MockCommand("home"), "home", new String[]{"base", "move", "x", "1"});
+        assertEquals("homemove base 10 -4", d.getRan());
+        assertTrue(s.getMessages().get(0).contains("Invalid command"));
+
+        //"3" is an Integer first, but only as a String does the rest of the path match
+        e.onCommand(new MockCommandSender(), new MockCommand("home"), "home", new String[]{"3", "move", "10", "-4"});
+        assertEquals("homemove 3 10 -4", d.getRan());
+        e.onCommand(new MockCommandSender(), new MockCommand("home"), "home", new String[]{"3"});
+        assertEquals("homeslot 3", d.getRan());
+
+        CommandLeaf move = e.getLeaves().stream().filter(l -> l.getNumPathArguments() == 2).findAny().get();
+        //only z's name depends on the method's parameter names being kept
+        assertTrue(move.getUsage().startsWith("/home <name:String> move <x:Integer> <"));
+        assertTrue(move.getUsage().endsWith(":Integer>"));
+        assertEquals(Integer.class, move.getArgumentTypeAt(3));
+        assertEquals(Arrays.asList("move"), e.getTabCompletions("home", new String[]{"base", "m"}));
+
+        assertTrue(e.remove(d));
+        assertTrue(e.getTabCompletions("home", new String[0]).isEmpty());
+    }
+
+    @Test
+    public void testRegisteredConverters() {
+        e.onCommand(new MockCommandSender(), new MockCommand("mute"), "mute", new String[]{"minutes", "1h30m"});
+        assertEquals("mute MINUTES PT1H30M", d.getRan());
+
+        MockCommandSender s = new MockCommandSender();
+        e.onCommand(s, new MockCommand("mute"), "mute", new String[]{"fortnights", "1h"});
+        assertTrue(s.getMessages().get(0).contains("Invalid command"));
+    }
+
+    @Test
+    public void testRawCommandLine() {
+        assertTrue(e.dispatch(new MockCommandSender(), "/home \"my home\" move 10 -4"));
+        assertEquals("homemove my home 10 -4", d.getRan());
+        assertTrue(e.dispatch(new MockCommandSender(), "home   my\\ home"));
+        assertEquals("homenamed my home", d.getRan());
+        //too big for an Integer, so it can only be a name
+        assertTrue(e.dispatch(new MockCommandSender(), "/home 99999999999"));
+        assertEquals("homenamed 99999999999", d.getRan());
+        assertTrue(e.dispatch(new MockCommandSender(), "/long command path a \"b c\" d"));
+        assertEquals(3, d.getArgsPassed());
+
+        assertFalse(e.dispatch(new MockCommandSender(), "/nosuchcommand"));
+
+        CommandLine line = new CommandLine(" a \"b \\\" c\" d", 0);
+        assertEquals("a", line.get(0));
+        assertEquals("b \" c", line.get(1));
+        assertArrayEquals(new String[]{"d"}, line.toArray(2));
+        assertEquals(3, line.size());
+    }
+
+    @Test
+    public void testMetrics() {
+        e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"hi"});
+        assertEquals(0, e.getMetrics().get("say hi").getInvocations());
+
+        e.enableMetrics();
+        e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"hi"});
+        e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"hi"});
+        e.onCommand(new MockCommandSender(), new MockCommand("echo"), "echo", new String[0]);
+
+        CommandMetrics.Snapshot sayHi = e.getMetrics().get("say hi");
+        assertEquals(2, sayHi.getInvocations());
+        assertEquals(0, sayHi.getFailures());
+        assertEquals(2, sayHi.getLatencyCount());
+        assertTrue(sayHi.getLatencyPercentile(50) > 0);
+
+        CommandMetrics.Snapshot echo = e.getMetrics().get("echo");
+        assertEquals(1, echo.getInvocations());
+        assertEquals(1, echo.getFailures(CommandMetrics.Failure.MISSING_ARGS));
+        assertEquals(0, echo.getLatencyCount());
+    }
+
+    @Test
+    public void testInterceptors() {
+        List<String> calls = new ArrayList<>();
+        e.addInterceptor(new CommandInterceptor() {
+            @Override
+            public boolean preExecute(CommandSender sender, CommandLeaf leaf, Object[] args) {
+                calls.add("pre " + String.join(" ", leaf.getStringNodes()));
+                return !leaf.getStringNodes().contains("bye");
+            }
+
+            @Override
+            public void postExecute(CommandSender sender, CommandLeaf leaf, Object[] args) {
+                calls.add("post " + String.join(" ", leaf.getStringNodes()));
+            }
+        });
+        e.addInterceptor(new CommandInterceptor() {
+            @Override
+            public boolean appliesTo(CommandLeaf leaf) {
+                return leaf.getStringNodes().get(0).equals("say");
+            }
+
+            @Override
+            public boolean preExecute(CommandSender sender, CommandLeaf leaf, Object[] args) {
+                calls.add("inner");
+                return true;
+            }
+        });
+
+        e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"hi"});
+        assertEquals("sayhi", d.getRan());
+        e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"bye"});
+        assertEquals("sayhi", d.getRan());
+        e.onCommand(new MockCommandSender(), new MockCommand("sayone"), "sayone", new String[0]);
+        assertEquals("sayone", d.getRan());
+        assertEquals(Arrays.asList("pre say hi", "inner", "post say hi", "pre say bye", "pre sayone", "post sayone"), calls);
+    }
+
+    @Test
+    public void testWatchdog() {
+        try(TickBudgetWatchdog w = new TickBudgetWatchdog(40, TimeUnit.MILLISECONDS)) {
+            e.setWatchdog(w);
+            e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"hi"});
+            e.onCommand(new MockCommandSender(), new MockCommand("slow"), "slow", new String[]{"arg"});
+            assertEquals("slow", d.getRan());
+
+            List<TickBudgetWatchdog.SlowCommand> slow = w.getSlowCommands();
+            assertEquals(1, slow.size());
+            assertEquals("slow", slow.get(0).getPath());
+            assertEquals(Arrays.asList("arg"), slow.get(0).getArgs());
+            assertTrue(slow.get(0).getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(200));
+            //sampled while it was still running, once its budget was up
+            assertTrue(Arrays.stream(slow.get(0).getStackTrace()).anyMatch(f -> f.getMethodName().equals("slow")));
+        }
+    }
+
+    @Test
+    public void testWatchdogPathArguments() {
+        try(TickBudgetWatchdog w = new TickBudgetWatchdog(1, TimeUnit.NANOSECONDS)) {
+            e.setWatchdog(w);
+            e.onCommand(new MockCommandSender(), new MockCommand("home"), "home", new String[]{"base", "move", "10", "-4"});
+            assertEquals("homemove base 10 -4", d.getRan());
+
+            List<TickBudgetWatchdog.SlowCommand> slow = w.getSlowCommands();
+            assertEquals(1, slow.size());
+            assertEquals("home base move 10", slow.get(0).getPath());
+            assertEquals(Arrays.asList("-4"), slow.get(0).getArgs());
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        assertTrue(e.remove(d));
+        assertTrue(e.getLeaves().isEmpty());
+        assertTrue(e.getTabCompletions("this", new String[]{"one", ""}).isEmpty());
+
+        e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"hi"});
+        assertNull(d.getRan());
+        assertFalse(e.remove(d));
+
+        e.add(d);
+        e.onCommand(new MockCommandSender(), new MockCommand("say"), "say", new String[]{"hi"});
+        assertEquals(d.getRan(), "sayhi");
+    }
+
+    @Test
+    public void testRemoveAlias() {
+        TreeCommandExecutor e = new TreeCommandExecutor();
+        WarpSet set = new WarpSet();
+        WarpList list = new WarpList();
+        e.add(set);
+        e.add(list);
+        assertTrue(e.remove(set));
+
+        //only the removed command declared "w"
+        assertFalse(e.dispatch(new MockCommandSender(), "/w list"));
+        assertFalse(list.hasRun());
+        assertTrue(e.dispatch(new MockCommandSender(), "/warp list"));
+        assertTrue(list.hasRun());
+
+        Whisper whisper = new Whisper();
+        e.add(whisper);
+        assertTrue(e.dispatch(new MockCommandSender(), "/w"));
+        assertTrue(whisper.hasRun());
+        assertEquals(Arrays.asList("list"), e.getTabCompletions("warp", new String[]{""}));
+    }
+
+    @Test
+    public void testAliasCollision() {
+        TreeCommandExecutor e = new TreeCommandExecutor();
+        Whisper whisper = new Whisper();
+        e.add(whisper);
+        try {
+            e.add(new WarpSet());
+            fail("\"w\" already leads to another command");
+        } catch(RuntimeException expected) {
+        }
+        assertFalse(e.dispatch(new MockCommandSender(), "/warp set"));
+
+        e = new TreeCommandExecutor();
+        e.add(new WarpSet());
+        try {
+            e.add(whisper);
+            fail("\"w\" is already an alias of warp");
+        } catch(RuntimeException expected) {
+        }
+        assertTrue(e.dispatch(new MockCommandSender(), "/w"));
+        assertFalse(whisper.hasRun());
+    }
+
     @Test
     public void testSingleParamMethods() {
         e.onCommand(new MockCommandSender(), new MockCommand("param"), "param", new String[]{"args"});
@@ -149,4 +526,56 @@ public class CommandDefinitionTest {
             assertTrue(expected.contains(s));
         }
     }
+
+    /**
+     * Remembers which class called its command, which is its generated dispatcher unless add() fell
+     * back to reflection.
+     */
+    public static class DispatcherProbe implements CommandDefinition {
+        private String caller;
+
+        @CommandMethod(path = "probe")
+        public void probe() {
+            caller = new Throwable().getStackTrace()[1].getClassName();
+        }
+
+        public String getCaller() {
+            return caller;
+        }
+    }
+
+    public static class ReflectedProbe extends DispatcherProbe {
+    }
+
+    public static class WarpSet implements CommandDefinition {
+        @CommandMethod(path = "warp|w set")
+        public void set() {
+        }
+    }
+
+    public static class WarpList implements CommandDefinition {
+        private boolean ran;
+
+        @CommandMethod(path = "warp list")
+        public void list() {
+            ran = true;
+        }
+
+        public boolean hasRun() {
+            return ran;
+        }
+    }
+
+    public static class Whisper implements CommandDefinition {
+        private boolean ran;
+
+        @CommandMethod(path = "w")
+        public void whisper() {
+            ran = true;
+        }
+
+        public boolean hasRun() {
+            return ran;
+        }
+    }
 }
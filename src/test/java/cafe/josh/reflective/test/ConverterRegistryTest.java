@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.test;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import cafe.josh.reflective.convert.ArgumentConverter;
+import cafe.josh.reflective.convert.ConverterRegistry;
+import org.bukkit.Material;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author joshua
+ */
+public class ConverterRegistryTest {
+    private final ConverterRegistry r = new ConverterRegistry();
+
+    @Test
+    public void testStandardConverters() {
+        UUID id = UUID.randomUUID();
+        assertEquals(id, r.get(UUID.class).convert(id.toString()));
+        assertEquals(Duration.ofMinutes(90), r.get(Duration.class).convert("1h30m"));
+        assertEquals(Duration.ofMillis(250), r.get(Duration.class).convert("250ms"));
+        assertEquals(Duration.ofSeconds(2), r.get(Duration.class).convert("PT2S"));
+        assertEquals(TimeUnit.SECONDS, r.get(TimeUnit.class).convert("seconds"));
+        assertEquals(Material.DIAMOND_SWORD, r.get(Material.class).convert("diamond_sword"));
+        assertEquals(Integer.valueOf(-12), r.get(Integer.class).convert("x-12y", 1, 4));
+        assertEquals(Byte.valueOf((byte) -128), r.get(Byte.class).convert("-128"));
+        assertEquals(Long.MIN_VALUE, (long) r.get(Long.class).convert(Long.toString(Long.MIN_VALUE)));
+
+        assertFails(Duration.class, "5x");
+        assertFails(Duration.class, "h");
+        assertFails(TimeUnit.class, "fortnights");
+        assertFails(Byte.class, "128");
+        assertFails(Integer.class, "-");
+        assertFails(Long.class, "9223372036854775808");
+    }
+
+    @Test
+    public void testTryConvert() {
+        assertEquals(Double.valueOf(1000), r.get(Double.class).tryConvert("1e3", 0, 3));
+        assertEquals(Float.valueOf(.5f), r.get(float.class).tryConvert("+.5f", 0, 4));
+        assertTrue(r.get(Double.class).tryConvert("-Infinity", 0, 9).isInfinite());
+        assertEquals(UUID.fromString("123e4567-e89b-12d3-a456-426614174000"), r.get(UUID.class).tryConvert("123e4567-e89b-12d3-a456-426614174000", 0, 36));
+        assertEquals(Duration.ofHours(1), r.get(Duration.class).tryConvert("pt1h", 0, 4));
+
+        assertFailsQuietly(Double.class, "e5");
+        assertFailsQuietly(Double.class, "1.2.3");
+        assertFailsQuietly(Double.class, "0x1p3");
+        assertFailsQuietly(UUID.class, "123e4567-e89b-12d3-a456-42661417400g");
+        assertFailsQuietly(Duration.class, "PT");
+        assertFailsQuietly(Duration.class, "P1DT");
+        assertFailsQuietly(Boolean.class, "yes");
+
+        assertEquals("must be between -128 and 127", r.get(Byte.class).describeFailure("999", 0, 3));
+        assertEquals("not a whole number", r.get(Integer.class).describeFailure("99x", 0, 3));
+        assertEquals("that duration is too long", r.get(Duration.class).describeFailure("99999999999999999d", 0, 18));
+    }
+
+    @Test
+    public void testEnumsIgnoreLocale() {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            //in Turkish, "I" lower-cases to a dotless i
+            String hint = r.get(TimeUnit.class).describeFailure("fortnights", 0, 10);
+            assertTrue(hint, hint.contains("milliseconds"));
+            assertEquals(TimeUnit.MILLISECONDS, r.get(TimeUnit.class).convert("milliseconds"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void testRegister() {
+        assertFalse(r.canConvert(StringBuilder.class));
+        r.register(StringBuilder.class, (s, start, end) -> new StringBuilder(s.subSequence(start, end)));
+        assertEquals("abc", r.get(StringBuilder.class).convert("abc").toString());
+    }
+
+    @Test
+    public void testServices() {
+        assertFalse(r.canConvert(PointConverter.Point.class));
+        assertTrue(ConverterRegistry.getDefault().canConvert(PointConverter.Point.class));
+        assertEquals(1, r.loadServices(getClass().getClassLoader()));
+
+        ArgumentConverter<PointConverter.Point> c = r.get(PointConverter.Point.class);
+        assertEquals(-3, c.convert("4,-3").z);
+    }
+
+    private void assertFailsQuietly(Class<?> type, String s) {
+        assertNull(s + " shouldn't convert to " + type.getSimpleName(), r.get(type).tryConvert(s, 0, s.length()));
+        assertFails(type, s);
+    }
+
+    private void assertFails(Class<?> type, String s) {
+        try {
+            r.get(type).convert(s);
+            fail(s + " shouldn't convert to " + type.getSimpleName());
+        } catch(IllegalArgumentException expected) {
+        }
+    }
+}
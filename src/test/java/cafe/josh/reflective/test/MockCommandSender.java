@@ -16,6 +16,8 @@
  */
 package cafe.josh.reflective.test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import org.bukkit.Server;
 import org.bukkit.command.CommandSender;
@@ -29,15 +31,23 @@ import org.bukkit.plugin.Plugin;
  * @author joshua
  */
 public class MockCommandSender implements CommandSender {
+    private final List<String> messages = new ArrayList<>();
 
     @Override
     public void sendMessage(String message) {
         System.out.println(message);
+        messages.add(message);
+    }
+
+    public List<String> getMessages() {
+        return messages;
     }
 
     @Override
     public void sendMessage(String[] messages) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        for(String message : messages) {
+            sendMessage(message);
+        }
     }
 
     @Override
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.test;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.UUID;
+import cafe.josh.reflective.CommandDefinition;
+import cafe.josh.reflective.TreeCommandExecutor;
+import cafe.josh.reflective.annotation.CommandMethod;
+import cafe.josh.reflective.convert.ConverterRegistry;
+import cafe.josh.reflective.convert.PlayerIndex;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author joshua
+ */
+public class PlayerIndexTest {
+    private PlayerIndex index;
+    private Player alice, alfred, bob;
+
+    @Before
+    public void setUp() {
+        index = new PlayerIndex();
+        alice = mockPlayer("Alice");
+        alfred = mockPlayer("Alfred");
+        bob = mockPlayer("bob");
+        for(Player p : new Player[]{alice, alfred, bob}) {
+            index.onJoin(new PlayerJoinEvent(p, null));
+        }
+    }
+
+    @Test
+    public void testLookup() {
+        assertSame(alice, index.getPlayer("ALICE"));
+        assertSame(bob, index.getPlayer("b"));
+        assertNull(index.getPlayer("al"));
+        assertEquals(Arrays.asList("Alfred", "Alice"), index.getNamesStartingWith("aL"));
+
+        index.onQuit(new PlayerQuitEvent(bob, null));
+        assertNull(index.getPlayer("bob"));
+        assertEquals(bob.getUniqueId(), index.getUniqueId("Bob"));
+    }
+
+    @Test
+    public void testPlayerArguments() {
+        index.registerConverters(ConverterRegistry.getDefault());
+        TreeCommandExecutor e = new TreeCommandExecutor();
+        TargetCommands d = new TargetCommands();
+        e.add(d);
+
+        e.onCommand(new MockCommandSender(), new MockCommand("tp"), "tp", new String[]{"alfr"});
+        assertSame(alfred, d.target);
+        e.onCommand(new MockCommandSender(), new MockCommand("tp"), "tp", new String[]{"bob", "here"});
+        assertSame(bob, d.target);
+
+        assertEquals(Arrays.asList("Alfred", "Alice"), e.getTabCompletions("tp", new String[]{"a"}));
+        assertTrue(e.getTabCompletions("tp", new String[]{"carol"}).isEmpty());
+        assertEquals(Arrays.asList("here"), e.getTabCompletions("tp", new String[]{"bob", ""}));
+    }
+
+    private static Player mockPlayer(String name) {
+        UUID id = UUID.randomUUID();
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class}, (proxy, m, args) -> {
+            switch(m.getName()) {
+                case "getName":
+                    return name;
+                case "getUniqueId":
+                    return id;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return id.hashCode();
+                case "toString":
+                    return name;
+                default:
+                    throw new UnsupportedOperationException(m.getName());
+            }
+        });
+    }
+
+    public static class TargetCommands implements CommandDefinition {
+        private Player target;
+
+        @CommandMethod(path = "tp <target:Player>")
+        public void tp(CommandSender s, Player target) {
+            this.target = target;
+        }
+
+        @CommandMethod(path = "tp <target:Player> here")
+        public void tpHere(CommandSender s, Player target) {
+            this.target = target;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.test;
+
+import cafe.josh.reflective.convert.ArgumentConverter;
+
+/**
+ * Loaded as a service, from src/test/resources.
+ *
+ * @author joshua
+ */
+public class PointConverter implements ArgumentConverter<PointConverter.Point> {
+    @Override
+    public Point convert(CharSequence s, int start, int end) {
+        String[] xz = s.subSequence(start, end).toString().split(",");
+        if(xz.length != 2) {
+            throw new IllegalArgumentException("points look like x,z");
+        }
+
+        return new Point(Integer.parseInt(xz[0]), Integer.parseInt(xz[1]));
+    }
+
+    public static class Point {
+        public final int x, z;
+
+        public Point(int x, int z) {
+            this.x = x;
+            this.z = z;
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package cafe.josh.reflective.test;
 
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 import cafe.josh.reflective.CommandDefinition;
 import cafe.josh.reflective.annotation.CommandMethod;
 import org.bukkit.command.CommandSender;
@@ -64,6 +66,22 @@ public class SampleCommandDefinition implements CommandDefinition {
         ran = "saybye";
     }
 
+    @CommandMethod(path = "warp|w|tp2warp set")
+    public void warpSet() {
+        ran = "warpset";
+    }
+
+    @CommandMethod(path = "warp list|ls")
+    public void warpList() {
+        ran = "warplist";
+    }
+
+    @CommandMethod(path = "slow")
+    public void slow() throws InterruptedException {
+        Thread.sleep(200);
+        ran = "slow";
+    }
+
     @CommandMethod(path = "sayone")
     public void sayOne(CommandSender s, String[] args) {
         System.out.println("One");
@@ -103,6 +121,26 @@ public class SampleCommandDefinition implements CommandDefinition {
         argsPassed = args.length;
     }
 
+    @CommandMethod(path = "home <slot:Integer>")
+    public void homeSlot(CommandSender s, Integer slot) {
+        ran = "homeslot " + slot;
+    }
+
+    @CommandMethod(path = "home <name:String>")
+    public void homeNamed(CommandSender s, String name) {
+        ran = "homenamed " + name;
+    }
+
+    @CommandMethod(path = "home <name:String> move <x:Integer>", requiredArgs = 1)
+    public void homeMove(CommandSender s, String name, Integer x, Integer z) {
+        ran = "homemove " + name + " " + x + " " + z;
+    }
+
+    @CommandMethod(path = "mute <unit:TimeUnit>")
+    public void mute(CommandSender s, TimeUnit unit, Duration d) {
+        ran = "mute " + unit + " " + d;
+    }
+
     public String getRan() {
         return ran;
     }
@@ -16,9 +16,10 @@
  */
 package cafe.josh.reflective.test;
 
-import java.math.BigInteger;
 import cafe.josh.reflective.CommandDefinition;
 import cafe.josh.reflective.annotation.CommandMethod;
+import cafe.josh.reflective.annotation.CompleteWith;
+import cafe.josh.reflective.annotation.DefaultValue;
 import org.bukkit.command.CommandSender;
 import org.junit.Assert;
 
@@ -52,24 +53,6 @@ public class SampleVariadicCommandDefinition implements CommandDefinition {
         restArrSize = rest.length;
     }
 
-    @CommandMethod(path = "sample invalid1")
-    public void invalidParamType(BigInteger arg1, String arg2) {
-        System.out.println("/sample invalid1 should not run!!");
-        ran = "invalidParamType";
-    }
-
-    @CommandMethod(path = "sample invalid2")
-    public void invalidStringArrPos(String[] rest, String arg2, Float arg3, Boolean arg4) {
-        System.out.println("/sample invalid2 should not run!!");
-        ran = "invalidStringArrPos";
-    }
-
-    @CommandMethod(path = "sample invalid3")
-    public void invalidSenderPos(String arg2, Float arg3, CommandSender s, Boolean arg4) {
-        System.out.println("/sample invalid3 should not run!!");
-        ran = "invalidSenderPos";
-    }
-
     @CommandMethod(path = "sample notEnoughArgs", requiredArgs = 2)
     public void invalidSenderPos(String arg1, Float arg2) {
         ran = "invalidSenderPos";
@@ -82,6 +65,16 @@ public class SampleVariadicCommandDefinition implements CommandDefinition {
         Assert.assertNull(arg2);
     }
 
+    @CommandMethod(path = "sample complete")
+    public void completeArgs(@CompleteWith("colors") String color, Boolean flag) {
+        ran = "completeArgs";
+    }
+
+    @CommandMethod(path = "sample primitives <count:int>")
+    public void primitives(int count, @DefaultValue("2.5") double radius, @DefaultValue("true") boolean loud) {
+        ran = "primitives " + count + " " + radius + " " + loud;
+    }
+
     public String getRan() {
         return ran;
     }
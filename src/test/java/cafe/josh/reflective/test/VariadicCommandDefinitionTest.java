@@ -16,8 +16,13 @@
  */
 package cafe.josh.reflective.test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import cafe.josh.reflective.CachedArgumentCompleter;
 import cafe.josh.reflective.TreeCommandExecutor;
 import cafe.josh.reflective.CommandLeaf.UnsupportedParameterException;
+import cafe.josh.reflective.test.invalid.InvalidVariadicCommandDefinitions;
 import org.junit.After;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -58,6 +63,16 @@ public class VariadicCommandDefinitionTest {
         assertEquals("coercionWithSender", d.getRan());
     }
 
+    @Test
+    public void testConversionFailure() {
+        MockCommandSender s = new MockCommandSender();
+        e.onCommand(s, new MockCommand("sample"), "sample", new String[]{"cmd2", "ten", "muh str", "x", "false"});
+        assertNull(d.getRan());
+        //conversion stops at the first bad argument, so "x" isn't reported
+        assertEquals(1, s.getMessages().size());
+        assertEquals("Error converting \"ten\" to java.lang.Integer: not a whole number", s.getMessages().get(0));
+    }
+
     @Test
     public void testCoercionWithStringArr() {
         e.onCommand(new MockCommandSender(), new MockCommand("sample"), "sample", new String[]{"cmd3", "100", "200", "more", "stuff", "here"});
@@ -69,7 +84,7 @@ public class VariadicCommandDefinitionTest {
     public void testInvalidParamType() {
         boolean thrown = false;
         try {
-            e.onCommand(new MockCommandSender(), new MockCommand("sample"), "sample", new String[]{"invalid1", "100", "muh str"});
+            e.add(new InvalidVariadicCommandDefinitions.InvalidParamType());
         } catch(UnsupportedParameterException ex) {
             thrown = true;
             System.out.println("Correctly threw: " + ex.getLocalizedMessage());
@@ -83,7 +98,7 @@ public class VariadicCommandDefinitionTest {
     public void testIncorrectStringArrPos() {
         boolean thrown = false;
         try {
-            e.onCommand(new MockCommandSender(), new MockCommand("sample"), "sample", new String[]{"invalid2", "rest", "str", "100.1", "true"});
+            e.add(new InvalidVariadicCommandDefinitions.InvalidStringArrPos());
         } catch(UnsupportedParameterException ex) {
             thrown = true;
             System.out.println("Correctly threw: " + ex.getLocalizedMessage());
@@ -97,7 +112,7 @@ public class VariadicCommandDefinitionTest {
     public void testIncorrectSenderPos() {
         boolean thrown = false;
         try {
-            e.onCommand(new MockCommandSender(), new MockCommand("sample"), "sample", new String[]{"invalid3", "str", "100.1", "true"});
+            e.add(new InvalidVariadicCommandDefinitions.InvalidSenderPos());
         } catch(UnsupportedParameterException ex) {
             thrown = true;
             System.out.println("Correctly threw: " + ex.getLocalizedMessage());
@@ -106,6 +121,33 @@ public class VariadicCommandDefinitionTest {
         assertNull(d.getRan());
     }
 
+    @Test
+    public void testMissingPrimitiveDefault() {
+        boolean thrown = false;
+        try {
+            e.add(new InvalidVariadicCommandDefinitions.MissingPrimitiveDefault());
+        } catch(UnsupportedParameterException ex) {
+            thrown = true;
+            System.out.println("Correctly threw: " + ex.getLocalizedMessage());
+        }
+        assertTrue(thrown);
+        assertNull(d.getRan());
+    }
+
+    @Test
+    public void testPrimitives() {
+        e.onCommand(new MockCommandSender(), new MockCommand("sample"), "sample", new String[]{"primitives", "3"});
+        assertEquals("primitives 3 2.5 true", d.getRan());
+        e.onCommand(new MockCommandSender(), new MockCommand("sample"), "sample", new String[]{"primitives", "-7", "10", "false"});
+        assertEquals("primitives -7 10.0 false", d.getRan());
+
+        //a bad argument stops the command
+        MockCommandSender s = new MockCommandSender();
+        e.onCommand(s, new MockCommand("sample"), "sample", new String[]{"primitives", "4", "wide"});
+        assertEquals("primitives -7 10.0 false", d.getRan());
+        assertTrue(s.getMessages().get(0).startsWith("Error converting \"wide\" to double"));
+    }
+
     @Test
     public void testLazyReqArgsCheck() {
         e.onCommand(new MockCommandSender(), new MockCommand("sample"), "sample", new String[]{"notEnoughArgs", "str"});
@@ -117,4 +159,14 @@ public class VariadicCommandDefinitionTest {
         e.onCommand(new MockCommandSender(), new MockCommand("sample"), "sample", new String[]{"missingOptionalArgs", "str"});
         assertEquals("missingOptionalArgs", d.getRan());
     }
+
+    @Test
+    public void testArgumentCompletion() {
+        e.registerCompleter("colors", new CachedArgumentCompleter(() -> Arrays.asList("red", "Green", "blue"), 1, TimeUnit.MINUTES, Runnable::run));
+
+        assertEquals(Arrays.asList("blue", "Green", "red"), e.getTabCompletions(new MockCommandSender(), "sample", new String[]{"complete", ""}));
+        assertEquals(Arrays.asList("Green"), e.getTabCompletions(new MockCommandSender(), "sample", new String[]{"complete", "g"}));
+        assertEquals(Arrays.asList("true"), e.getTabCompletions(new MockCommandSender(), "sample", new String[]{"complete", "red", "T"}));
+        assertEquals(Collections.emptyList(), e.getTabCompletions(new MockCommandSender(), "sample", new String[]{"complete", "red", "true", ""}));
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 Joshua Michael Hertlein <jmhertlein@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cafe.josh.reflective.test.invalid;
+
+import java.math.BigInteger;
+import cafe.josh.reflective.CommandDefinition;
+import cafe.josh.reflective.annotation.CommandMethod;
+import org.bukkit.command.CommandSender;
+
+/**
+ * CommandDefinitions whose parameters CommandLeaf can't bind. CommandMethodProcessor rejects these,
+ * so this package is compiled without it.
+ *
+ * @author joshua
+ */
+public class InvalidVariadicCommandDefinitions {
+    public static class InvalidParamType implements CommandDefinition {
+        @CommandMethod(path = "sample invalid1")
+        public void invalidParamType(BigInteger arg1, String arg2) {
+            System.out.println("/sample invalid1 should not run!!");
+        }
+    }
+
+    public static class InvalidStringArrPos implements CommandDefinition {
+        @CommandMethod(path = "sample invalid2")
+        public void invalidStringArrPos(String[] rest, String arg2, Float arg3, Boolean arg4) {
+            System.out.println("/sample invalid2 should not run!!");
+        }
+    }
+
+    public static class InvalidSenderPos implements CommandDefinition {
+        @CommandMethod(path = "sample invalid3")
+        public void invalidSenderPos(String arg2, Float arg3, CommandSender s, Boolean arg4) {
+            System.out.println("/sample invalid3 should not run!!");
+        }
+    }
+
+    public static class MissingPrimitiveDefault implements CommandDefinition {
+        @CommandMethod(path = "sample invalid4", requiredArgs = 1)
+        public void missingPrimitiveDefault(int arg1, long arg2) {
+            System.out.println("/sample invalid4 should not run!!");
+        }
+    }
+}